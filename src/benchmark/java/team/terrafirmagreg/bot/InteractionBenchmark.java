@@ -0,0 +1,229 @@
+package team.terrafirmagreg.bot;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the two interaction models, run with {@code ./gradlew benchmarkInteractions -Pjava21=true}.
+ * Without an event pool JDA calls the listeners on its gateway thread, one event after another; the Java 21
+ * build hands every event to its own virtual thread instead ({@link VirtualThreads}, as Main sets it up).
+ * <p>
+ * A single gateway thread delivers a burst of interactions, dispatched either way. Each one does the work
+ * its handler does: autocomplete suggestions from {@link Main#suggestions}, a {@code /guide path} embed from
+ * {@link Scraper#fetchGuideEmbedAsync} or a {@code /guide search} from {@link Scraper#searchAsync}.
+ * Discord's REST replies are left out, JDA sends those from its own pools in both models.
+ * The guide is a local stand-in that sends headers after one delay and page bodies in chunks over another.
+ * Each model runs in its own JVM because Scraper picks its executors once.
+ * <p>
+ * Args: {@code [interactions] [upstreamLatencyMs] [upstreamConcurrency]}
+ */
+public class InteractionBenchmark {
+    private static final int BODY_CHUNKS = 8;
+    private static final int INDEX_PAGES = 500;
+    private static final String[] QUERIES = {"copper", "bronze anvil", "tin ore", "weld", "forge heat", "bismuth"};
+    private static final AtomicInteger failures = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--run")) {
+            run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        int interactions = arg(args, 0, 300);
+        int latencyMs = arg(args, 1, 200);
+        int upstream = arg(args, 2, 8);
+        System.out.printf("%d interactions, %d ms upstream latency, %d upstream permits%n", interactions, latencyMs, upstream);
+        fork("platform", true, interactions, latencyMs, upstream);
+        fork("virtual", false, interactions, latencyMs, upstream);
+    }
+
+    private static void fork(String name, boolean platform, int interactions, int latencyMs, int upstream) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (platform) command.add("-Dfg.platformThreads=true");
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), InteractionBenchmark.class.getName(), "--run", name,
+                String.valueOf(interactions), String.valueOf(latencyMs), String.valueOf(port)));
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        builder.environment().put("UPSTREAM_CONCURRENCY", String.valueOf(upstream));
+        builder.environment().put("SEARCH_INDEX_URL", "http://127.0.0.1:" + port + "/Field-Guide-Modern/en_us/search_index.json");
+        // The pre-renderer would crawl the stand-in's whole index during the run.
+        builder.environment().put("PRERENDER_LANGS", "");
+        Process process = builder.start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                // Drop logger noise from the child.
+                if (line.startsWith(name)) System.out.println(line);
+            }
+        }
+        process.waitFor();
+    }
+
+    private static void run(String[] args) throws Exception {
+        String name = args[0];
+        int interactions = arg(args, 1, 300);
+        int latencyMs = arg(args, 2, 200);
+        int port = arg(args, 3, 0);
+
+        HttpServer host = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        host.setExecutor(Executors.newCachedThreadPool());
+        host.createContext("/", exchange -> {
+            try {
+                String path = exchange.getRequestURI().getPath();
+                Thread.sleep(latencyMs / 2);
+                boolean index = path.endsWith(".json");
+                byte[] body = (index ? searchIndex() : page(path)).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", index ? "application/json" : "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    int chunk = (body.length + BODY_CHUNKS - 1) / BODY_CHUNKS;
+                    for (int off = 0; off < body.length; off += chunk) {
+                        out.write(body, off, Math.min(chunk, body.length - off));
+                        out.flush();
+                        Thread.sleep(latencyMs / 2 / BODY_CHUNKS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ignored) {
+            } finally {
+                exchange.close();
+            }
+        });
+        host.start();
+        String base = "http://127.0.0.1:" + port + "/Field-Guide-Modern/en_us/";
+
+        // Same pool Main gives JDA, null means listeners run on the gateway thread.
+        ExecutorService eventPool = VirtualThreads.newExecutor("fg-interaction");
+        // Load the index and warm up so the measured run doesn't pay for class loading and JIT.
+        Scraper.searchAsync(QUERIES[0], "en_us", 250, false).join();
+        deliver(eventPool, base + "warmup", 60, new long[1]);
+        failures.set(0);
+        long[] gatewayBusy = new long[1];
+        long start = System.nanoTime();
+        long[] latencies = deliver(eventPool, base + "page", interactions, gatewayBusy);
+        long wall = System.nanoTime() - start;
+        report(name, wall, gatewayBusy[0], latencies);
+        host.stop(0);
+        System.exit(0);
+    }
+
+    /**
+     * Delivers every interaction from one gateway thread and waits until each has its response.
+     * @param gatewayBusy Receives how long the gateway thread spent delivering, i.e. how long it couldn't read.
+     */
+    private static long[] deliver(ExecutorService eventPool, String prefix, int interactions, long[] gatewayBusy) throws InterruptedException {
+        long[] latencies = new long[interactions];
+        List<CompletableFuture<?>> responses = new ArrayList<>();
+        for (int i = 0; i < interactions; i++) responses.add(new CompletableFuture<>());
+
+        Thread gateway = new Thread(() -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < interactions; i++) {
+                int slot = i;
+                long delivered = System.nanoTime();
+                Runnable handler = () -> handle(prefix, slot).whenComplete((response, error) -> {
+                    latencies[slot] = System.nanoTime() - delivered;
+                    if (error != null) failures.incrementAndGet();
+                    responses.get(slot).complete(null);
+                });
+                if (eventPool != null) eventPool.execute(handler);
+                else handler.run();
+            }
+            gatewayBusy[0] = System.nanoTime() - start;
+        }, "gateway");
+        gateway.start();
+        gateway.join();
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).join();
+        return latencies;
+    }
+
+    /**
+     * The work a listener does for one interaction, a mix of autocomplete, path and search.
+     */
+    private static CompletableFuture<?> handle(String prefix, int i) {
+        try {
+            return switch (i % 3) {
+                case 0 -> CompletableFuture.completedFuture(Main.suggestions("query", QUERIES[i % QUERIES.length].substring(0, 3), "en_us"));
+                case 1 -> Scraper.fetchGuideEmbedAsync(prefix + i + ".html", "en_us");
+                default -> Scraper.searchAsync(QUERIES[i % QUERIES.length] + " " + (i % 50), "en_us", 250, false);
+            };
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String searchIndex() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < INDEX_PAGES; i++) {
+            if (i > 0) sb.append(',');
+            String word = QUERIES[i % QUERIES.length];
+            sb.append("{\"entry\":\"").append(word).append(' ').append(i).append("\",")
+                    .append("\"content\":\"Heat the ").append(word).append(" ingot and work it, section ").append(i % 50).append("\",")
+                    .append("\"url\":\"page").append(i).append(".html\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    // A guide-sized page: some sections with paragraphs, lists and links.
+    private static String page(String path) {
+        StringBuilder sb = new StringBuilder("<html><head><title>Bench</title></head><body><div class=\"col-md-9\">");
+        sb.append("<h1 id=\"title\">").append(path).append("</h1>");
+        for (int s = 0; s < 20; s++) {
+            sb.append("<h2 id=\"s").append(s).append("\">Section ").append(s).append("</h2>");
+            for (int p = 0; p < 5; p++) {
+                sb.append("<p>Heat the <strong>bronze</strong> ingot and work it on an <a href=\"anvil.html\">anvil</a>, ")
+                        .append("then weld the <code>double ingot</code> into a sheet.</p>");
+            }
+            sb.append("<ul><li>Copper</li><li>Tin</li><li>Bismuth</li></ul>");
+        }
+        return sb.append("</div></body></html>").toString();
+    }
+
+    private static void report(String name, long wall, long gatewayBusy, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-10s wall %6d ms | gateway busy %6d ms | p50 %6d ms | p95 %6d ms | p99 %6d ms | max %6d ms | failed %d%n",
+                name,
+                TimeUnit.NANOSECONDS.toMillis(wall),
+                TimeUnit.NANOSECONDS.toMillis(gatewayBusy),
+                percentile(sorted, 0.50),
+                percentile(sorted, 0.95),
+                percentile(sorted, 0.99),
+                TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length - 1]),
+                failures.get());
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+    }
+
+    private static int arg(String[] args, int index, int fallback) {
+        if (args.length <= index) return fallback;
+        try {
+            return Math.max(1, Integer.parseInt(args[index]));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package team.terrafirmagreg.bot;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Only compiled with -Pjava21=true. {@link VirtualThreads} picks it up by name; Main hands one to JDA
+ * as the event pool and Scraper parses pages on another.
+ */
+final class VirtualThreadInteractions {
+    private VirtualThreadInteractions() {}
+
+    /**
+     * One virtual thread per task, so a task blocked on the guide site doesn't hold up the others.
+     * @param name Prefix of the thread names.
+     */
+    static ExecutorService newExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+}
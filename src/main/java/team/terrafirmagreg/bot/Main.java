@@ -6,11 +6,13 @@ import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.component.StringSelectInteractionEvent;
 import net.dv8tion.jda.api.events.session.ReadyEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.commands.Command;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import net.dv8tion.jda.api.interactions.components.selections.StringSelectMenu;
@@ -21,7 +23,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 public class Main extends ListenerAdapter {
@@ -62,15 +66,17 @@ public class Main extends ListenerAdapter {
      * Builds select menu options for a page of results (25 max).
      * @param results All search results.
      * @param page Page index.
+     * @param tagLang Prefix labels with the result's locale (cross-locale searches).
      * @return Options for the select menu.
      */
-    private static List<SelectOption> buildSearchOptions(List<Scraper.SearchResult> results, int page) {
+    private static List<SelectOption> buildSearchOptions(List<Scraper.SearchResult> results, int page, boolean tagLang) {
         int start = (Math.max(1, page) - 1) * 25;
         List<Scraper.SearchResult> slice = results.subList(start, Math.min(start + 25, results.size()));
 
         return slice.stream()
                 .map(r -> {
-                    String rel = r.url.startsWith(Scraper.BASE) ? r.url.substring(Scraper.BASE.length()) : r.url;
+                    String rel = r.menuValue != null ? r.menuValue
+                            : r.url.startsWith(Scraper.BASE) ? r.url.substring(Scraper.BASE.length()) : r.url;
                     if (rel.contains("#")) {
                         String frag = rel.substring(rel.lastIndexOf('#') + 1);
                         String lc = frag.toLowerCase();
@@ -78,6 +84,7 @@ public class Main extends ListenerAdapter {
                     }
                     if (rel.length() > 100) return null;
                     String label = (r.title != null ? r.title : "Result");
+                    if (tagLang && r.lang != null) label = "[" + r.lang + "] " + label;
                     if (label.length() > 100) label = label.substring(0, 100);
                     String desc = rel.length() > 100 ? rel.substring(0, 100) : rel;
                     return SelectOption.of(label, rel).withDescription(desc);
@@ -177,24 +184,57 @@ public class Main extends ListenerAdapter {
         }
     }
 
+    // Suggestions for `/guide search` queries and `/guide path` paths, served from the cached index only.
+    @Override
+    public void onCommandAutoCompleteInteraction(@NotNull CommandAutoCompleteInteractionEvent event) {
+        try {
+            if (!event.getName().equals("guide")) return;
+            String langOpt = event.getOption("language") != null ? event.getOption("language").getAsString() : Locales.DEFAULT_LANG;
+            String selectedLang = Locales.LANGS.contains(langOpt) ? langOpt : Locales.DEFAULT_LANG;
+            String typed = event.getFocusedOption().getValue();
+
+            List<String> suggestions = suggestions(event.getFocusedOption().getName(), typed, selectedLang);
+
+            // Choice names and values are capped at 100 characters.
+            List<Command.Choice> choices = suggestions.stream()
+                    .filter(s -> s.length() <= 100)
+                    .map(s -> new Command.Choice(s, s))
+                    .collect(Collectors.toList());
+            event.replyChoices(choices).queue();
+        } catch (Exception e) {
+            if (DEV_MODE) logger.error("[Bot] autocomplete error:", e);
+        }
+    }
+
+    // Autocomplete values for the focused option, never waits on the network.
+    static List<String> suggestions(String option, String typed, String lang) {
+        return switch (option) {
+            case "query" -> Scraper.suggestTitles(typed, lang, 25);
+            case "path" -> Scraper.suggestPaths(typed, lang, 25);
+            default -> List.of();
+        };
+    }
+
     // `/fgpath`: fetch and display a guide page by the url path given.
     private void handleFgPath(SlashCommandInteractionEvent event) {
         String path = event.getOption("path").getAsString();
         String langOpt = event.getOption("language") != null ? event.getOption("language").getAsString() : Locales.DEFAULT_LANG;
         String selectedLang = Locales.LANGS.contains(langOpt) ? langOpt : Locales.DEFAULT_LANG;
 
-        event.reply("Working on it...").setEphemeral(true).queue(hook -> {
-            try {
-                MessageEmbed embed = Scraper.fetchGuideEmbed(path, selectedLang);
-                Button shareBtn = Button.primary("fg-share", "Share link");
-                hook.editOriginalEmbeds(embed).setComponents(ActionRow.of(shareBtn)).queue();
-            } catch (Exception e) {
-                if (DEV_MODE) logger.error("[Bot] fgpath error:", e);
-                try {
-                    hook.editOriginal("Failed to fetch that page.").queue();
-                } catch (Exception ignored) {}
-            }
-        });
+        // The edit is chained on the fetch, so no JDA thread waits on the guide.
+        event.reply("Working on it...").setEphemeral(true).queue(hook ->
+                Scraper.fetchGuideEmbedAsync(path, selectedLang).whenComplete((embed, error) -> {
+                    try {
+                        if (error != null) throw error;
+                        Button shareBtn = Button.primary("fg-share", "Share link");
+                        hook.editOriginalEmbeds(embed).setComponents(ActionRow.of(shareBtn)).queue();
+                    } catch (Throwable e) {
+                        if (DEV_MODE) logger.error("[Bot] fgpath error:", e);
+                        try {
+                            hook.editOriginal("Failed to fetch that page.").queue();
+                        } catch (Exception ignored) {}
+                    }
+                }));
     }
 
     // `/fgtop`: present a selector for the most important field guide links for quick access.
@@ -202,51 +242,52 @@ public class Main extends ListenerAdapter {
         String langOpt = event.getOption("language") != null ? event.getOption("language").getAsString() : Locales.DEFAULT_LANG;
         String selectedLang = Locales.LANGS.contains(langOpt) ? langOpt : Locales.DEFAULT_LANG;
 
-        event.reply("Choose a link…").setEphemeral(true).queue(hook -> {
-            try {
-                String langBase = Scraper.BASE + selectedLang + "/";
-                List<TopTarget> targets = List.of(
-                        new TopTarget("📙", langBase),
-                        new TopTarget("🖥️", "https://guide.appliedenergistics.org/1.20.1/"),
-                        new TopTarget("⛏️", langBase + "tfg_ores.html"),
-                        new TopTarget("🌎", langBase + "the_world/geology.html"),
-                        new TopTarget("🐖", langBase + "mechanics/animal_husbandry.html"),
-                        new TopTarget("🌾", langBase + "mechanics/crops.html"),
-                        new TopTarget("🍕", langBase + "firmalife.html"),
-                        new TopTarget("🛣️", langBase + "roadsandroofs.html"),
-                        new TopTarget("⛵", langBase + "firmaciv.html"),
-                        new TopTarget("💡", langBase + "tfg_tips.html")
-                );
-
-                List<SelectOption> options = new ArrayList<>();
-                for (TopTarget t : targets) {
+        String langBase = Scraper.BASE + selectedLang + "/";
+        List<TopTarget> targets = List.of(
+                new TopTarget("📙", langBase),
+                new TopTarget("🖥️", "https://guide.appliedenergistics.org/1.20.1/"),
+                new TopTarget("⛏️", langBase + "tfg_ores.html"),
+                new TopTarget("🌎", langBase + "the_world/geology.html"),
+                new TopTarget("🐖", langBase + "mechanics/animal_husbandry.html"),
+                new TopTarget("🌾", langBase + "mechanics/crops.html"),
+                new TopTarget("🍕", langBase + "firmalife.html"),
+                new TopTarget("🛣️", langBase + "roadsandroofs.html"),
+                new TopTarget("⛵", langBase + "firmaciv.html"),
+                new TopTarget("💡", langBase + "tfg_tips.html")
+        );
+        // Usually answered from the index's title table, only unknown pages are fetched (all at once).
+        CompletableFuture<List<Scraper.SearchResult>> titles = Scraper.fetchPageTitlesAsync(
+                targets.stream().map(TopTarget::url).collect(Collectors.toList()), selectedLang);
+
+        event.reply("Choose a link…").setEphemeral(true).queue(hook ->
+                titles.whenComplete((results, error) -> {
                     try {
-                        Scraper.SearchResult result = Scraper.fetchPageTitle(t.url, selectedLang);
-                        String labelText = result.title != null ? t.emoji + " " + result.title : t.emoji + " " + result.url;
-                        if (labelText.length() > 100) labelText = labelText.substring(0, 100);
-                        options.add(SelectOption.of(labelText, result.url));
-                    } catch (Exception e) {
-                        String labelText = t.emoji + " " + t.url;
-                        if (labelText.length() > 100) labelText = labelText.substring(0, 100);
-                        options.add(SelectOption.of(labelText, t.url));
+                        if (error != null) throw error;
+
+                        List<SelectOption> options = new ArrayList<>();
+                        for (int i = 0; i < targets.size(); i++) {
+                            TopTarget t = targets.get(i);
+                            Scraper.SearchResult result = results.get(i);
+                            String labelText = result.title != null ? t.emoji + " " + result.title : t.emoji + " " + result.url;
+                            if (labelText.length() > 100) labelText = labelText.substring(0, 100);
+                            options.add(SelectOption.of(labelText, result.url));
+                        }
+
+                        StringSelectMenu select = StringSelectMenu.create("fgtop-select")
+                                .setPlaceholder("Select a link")
+                                .addOptions(options)
+                                .build();
+
+                        hook.editOriginal("Top links:")
+                                .setComponents(ActionRow.of(select))
+                                .queue();
+                    } catch (Throwable e) {
+                        if (DEV_MODE) logger.error("[Bot] fgtop error:", e);
+                        try {
+                            hook.editOriginal("Failed to show top links.").queue();
+                        } catch (Exception ignored) {}
                     }
-                }
-
-                StringSelectMenu select = StringSelectMenu.create("fgtop-select")
-                        .setPlaceholder("Select a link")
-                        .addOptions(options)
-                        .build();
-
-                hook.editOriginal("Top links:")
-                        .setComponents(ActionRow.of(select))
-                        .queue();
-            } catch (Exception e) {
-                if (DEV_MODE) logger.error("[Bot] fgtop error:", e);
-                try {
-                    hook.editOriginal("Failed to show top links.").queue();
-                } catch (Exception ignored) {}
-            }
-        });
+                }));
     }
 
     // `/fgsearch`: search the guide for pages and sections matching query keywords. Like a browser.
@@ -254,40 +295,41 @@ public class Main extends ListenerAdapter {
         String query = event.getOption("query").getAsString();
         String langOpt = event.getOption("language") != null ? event.getOption("language").getAsString() : Locales.DEFAULT_LANG;
         String selectedLang = Locales.LANGS.contains(langOpt) ? langOpt : Locales.DEFAULT_LANG;
+        boolean allLanguages = event.getOption("all_languages") != null && event.getOption("all_languages").getAsBoolean();
 
-        event.reply("Searching for \"" + query + "\"...").setEphemeral(true).queue(hook -> {
-            try {
-                // Prefer JSON index search.
-                List<Scraper.SearchResult> results = Scraper.searchGuideFast(query, selectedLang, 250);
-                if (DEV_MODE) logger.info("[Bot] fgsearch (fast) query=\"{}\" results={}", query, results.size());
-
-                if (results.isEmpty()) {
-                    hook.editOriginal("No results for \"" + query + "\".").queue();
-                    return;
-                }
-
-                // If more than 25, enable paging via Prev/Next buttons
-                int totalPages = (int) Math.ceil(results.size() / 25.0);
-                if (totalPages == 0) totalPages = 1;
-                String token = UUID.randomUUID().toString();
-                searchSessions.put(token, new SearchSession(results, query, System.currentTimeMillis() + (15 * 60 * 1000)));
-
-                int page = 1;
-                List<SelectOption> options = buildSearchOptions(results, page);
-                String placeholder = "Select a result (Page " + page + "/" + totalPages + ")";
-                List<ActionRow> rows = buildSearchComponents(token, page, totalPages, options, placeholder);
-                String note = results.size() > 25 ? "Showing " + Math.min(25, results.size()) + " of " + results.size() : "";
-
-                hook.editOriginal("Results for \"" + query + "\": " + note)
-                        .setComponents(rows)
-                        .queue();
-            } catch (Exception e) {
-                if (DEV_MODE) logger.error("[Bot] fgsearch error:", e);
-                try {
-                    hook.editOriginal("Failed to search/fetch.").queue();
-                } catch (Exception ignored) {}
-            }
-        });
+        event.reply("Searching for \"" + query + "\"...").setEphemeral(true).queue(hook ->
+                Scraper.searchAsync(query, selectedLang, 250, allLanguages).whenComplete((results, error) -> {
+                    try {
+                        if (error != null) throw error;
+                        if (DEV_MODE) logger.info("[Bot] fgsearch (fast) query=\"{}\" results={}", query, results.size());
+
+                        if (results.isEmpty()) {
+                            hook.editOriginal("No results for \"" + query + "\".").queue();
+                            return;
+                        }
+
+                        // If more than 25, enable paging via Prev/Next buttons
+                        int totalPages = (int) Math.ceil(results.size() / 25.0);
+                        if (totalPages == 0) totalPages = 1;
+                        String token = UUID.randomUUID().toString();
+                        searchSessions.put(token, new SearchSession(results, query, allLanguages, System.currentTimeMillis() + (15 * 60 * 1000)));
+
+                        int page = 1;
+                        List<SelectOption> options = buildSearchOptions(results, page, allLanguages);
+                        String placeholder = "Select a result (Page " + page + "/" + totalPages + ")";
+                        List<ActionRow> rows = buildSearchComponents(token, page, totalPages, options, placeholder);
+                        String note = results.size() > 25 ? "Showing " + Math.min(25, results.size()) + " of " + results.size() : "";
+
+                        hook.editOriginal("Results for \"" + query + "\": " + note)
+                                .setComponents(rows)
+                                .queue();
+                    } catch (Throwable e) {
+                        if (DEV_MODE) logger.error("[Bot] fgsearch error:", e);
+                        try {
+                            hook.editOriginal("Failed to search/fetch.").queue();
+                        } catch (Exception ignored) {}
+                    }
+                }));
     }
 
     // `/fgscare`: sends GIF then posts embed.
@@ -347,19 +389,20 @@ public class Main extends ListenerAdapter {
         java.util.regex.Matcher matcher = pattern.matcher(url);
         String selectedLang = matcher.find() ? matcher.group(1) : Locales.DEFAULT_LANG;
 
-        event.deferEdit().queue(hook -> {
-            try {
-                MessageEmbed embed = Scraper.fetchGuideEmbed(url, selectedLang);
-                Button shareBtn = Button.primary("fg-share", "Share link");
-                hook.editOriginal("Result:")
-                        .setEmbeds(embed)
-                        .setComponents(ActionRow.of(shareBtn))
-                        .queue();
-            } catch (Exception e) {
-                if (DEV_MODE) logger.error("[Bot] fgsearch-select fetch error:", e);
-                hook.editOriginal("Failed to fetch the selected page.").setComponents().queue();
-            }
-        }, error -> {
+        event.deferEdit().queue(hook ->
+                Scraper.fetchGuideEmbedAsync(url, selectedLang).whenComplete((embed, fetchError) -> {
+                    try {
+                        if (fetchError != null) throw fetchError;
+                        Button shareBtn = Button.primary("fg-share", "Share link");
+                        hook.editOriginal("Result:")
+                                .setEmbeds(embed)
+                                .setComponents(ActionRow.of(shareBtn))
+                                .queue();
+                    } catch (Throwable e) {
+                        if (DEV_MODE) logger.error("[Bot] fgsearch-select fetch error:", e);
+                        hook.editOriginal("Failed to fetch the selected page.").setComponents().queue();
+                    }
+                }), error -> {
             if (DEV_MODE) logger.error("[Bot] fgsearch-select defer error:", error);
         });
     }
@@ -385,19 +428,20 @@ public class Main extends ListenerAdapter {
             java.util.regex.Matcher matcher = pattern.matcher(sel);
             String selectedLang = matcher.find() ? matcher.group(1) : Locales.DEFAULT_LANG;
 
-            event.deferEdit().queue(hook -> {
-                try {
-                    MessageEmbed embed = Scraper.fetchGuideEmbed(sel, selectedLang);
-                    Button shareBtn = Button.primary("fg-share", "Share link");
-                    hook.editOriginal("Selected:")
-                            .setEmbeds(embed)
-                            .setComponents(ActionRow.of(shareBtn))
-                            .queue();
-                } catch (Exception e) {
-                    if (DEV_MODE) logger.error("[Bot] fgtop-select fetch error:", e);
-                    hook.editOriginal("Failed to fetch the selected page.").setComponents().queue();
-                }
-            });
+            event.deferEdit().queue(hook ->
+                    Scraper.fetchGuideEmbedAsync(sel, selectedLang).whenComplete((embed, error) -> {
+                        try {
+                            if (error != null) throw error;
+                            Button shareBtn = Button.primary("fg-share", "Share link");
+                            hook.editOriginal("Selected:")
+                                    .setEmbeds(embed)
+                                    .setComponents(ActionRow.of(shareBtn))
+                                    .queue();
+                        } catch (Throwable e) {
+                            if (DEV_MODE) logger.error("[Bot] fgtop-select fetch error:", e);
+                            hook.editOriginal("Failed to fetch the selected page.").setComponents().queue();
+                        }
+                    }));
         } catch (Exception e) {
             if (DEV_MODE) logger.error("[Bot] fgtop-select handler error:", e);
             event.editMessage("Failed to fetch the selected page.").setComponents().queue();
@@ -452,7 +496,7 @@ public class Main extends ListenerAdapter {
         if (action.equals("fgsearch-prev")) nextPage = Math.max(1, pageNum - 1);
         if (action.equals("fgsearch-next")) nextPage = Math.min(totalPages, pageNum + 1);
 
-        List<SelectOption> options = buildSearchOptions(session.results, nextPage);
+        List<SelectOption> options = buildSearchOptions(session.results, nextPage, session.allLanguages);
         String placeholder = "Select a result (Page " + nextPage + "/" + totalPages + ")";
         List<ActionRow> rows = buildSearchComponents(token, nextPage, totalPages, options, placeholder);
 
@@ -483,11 +527,13 @@ public class Main extends ListenerAdapter {
     private static class SearchSession {
         List<Scraper.SearchResult> results;
         String query;
+        boolean allLanguages;
         long expiresAt;
 
-        SearchSession(List<Scraper.SearchResult> results, String query, long expiresAt) {
+        SearchSession(List<Scraper.SearchResult> results, String query, boolean allLanguages, long expiresAt) {
             this.results = results;
             this.query = query;
+            this.allLanguages = allLanguages;
             this.expiresAt = expiresAt;
         }
     }
@@ -507,11 +553,22 @@ public class Main extends ListenerAdapter {
             System.exit(1);
         }
 
+        // Searches work from the first interaction, the live indexes are revalidated in the background.
+        Scraper.loadIndexSnapshots();
+        Scraper.startStatsLog();
+
         try {
-            JDA jda = JDABuilder.createLight(token)
+            JDABuilder builder = JDABuilder.createLight(token)
                     .enableIntents(GatewayIntent.GUILD_MESSAGES)
-                    .addEventListeners(new Main())
-                    .build();
+                    .addEventListeners(new Main());
+
+            ExecutorService interactions = VirtualThreads.newExecutor("fg-interaction");
+            if (interactions != null) {
+                builder.setEventPool(interactions, true);
+                logger.info("[Bot] Handling interactions on virtual threads");
+            }
+
+            JDA jda = builder.build();
 
             jda.awaitReady();
             logger.info("[Bot] Bot is ready!");
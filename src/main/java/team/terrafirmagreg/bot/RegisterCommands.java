@@ -55,14 +55,17 @@ public class RegisterCommands {
                 .addOptions(languageOption);
 
         // Guide Subcommand: search
-        OptionData searchQueryOption = new OptionData(OptionType.STRING, "query", "Example: 'climate'", true);
+        OptionData searchQueryOption = new OptionData(OptionType.STRING, "query", "Example: 'climate'", true)
+                .setAutoComplete(true);
         OptionData searchLanguageOption = new OptionData(OptionType.STRING, "language", "Locale (default en_us)", false);
         Locales.getLanguageChoices().forEach(choice -> searchLanguageOption.addChoice(choice.getName(), choice.getAsString()));
+        OptionData searchAllLanguagesOption = new OptionData(OptionType.BOOLEAN, "all_languages", "Also search other languages (default false)", false);
         SubcommandData searchSubcommand = new SubcommandData("search", "Search the guide!")
-                .addOptions(searchQueryOption, searchLanguageOption);
+                .addOptions(searchQueryOption, searchLanguageOption, searchAllLanguagesOption);
 
         // Guide Subcommand: path
-        OptionData pathOption = new OptionData(OptionType.STRING, "path", "Example: 'mechanics/animal_husbandry'", true);
+        OptionData pathOption = new OptionData(OptionType.STRING, "path", "Example: 'mechanics/animal_husbandry'", true)
+                .setAutoComplete(true);
         OptionData pathLanguageOption = new OptionData(OptionType.STRING, "language", "Locale (default en_us)", false);
         Locales.getLanguageChoices().forEach(choice -> pathLanguageOption.addChoice(choice.getName(), choice.getAsString()));
         SubcommandData pathSubcommand = new SubcommandData("path", "Fetch a page by URL path.")
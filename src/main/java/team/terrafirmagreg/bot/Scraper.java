@@ -1,7 +1,6 @@
 package team.terrafirmagreg.bot;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.MalformedJsonException;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import org.jsoup.Jsoup;
@@ -10,20 +9,54 @@ import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Elements;
-
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URL;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.Normalizer;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Scraper for the TerraFirmaGreg Field Guide website.
@@ -46,15 +79,146 @@ public class Scraper {
             "bd-theme",
             "bd-theme-text"
     );
-
-    /** Default TTL for cached search index (ms). */
+    // Removed from fetched pages before they are modeled. They only hold data nodes, which no embed text includes;
+    // ones with an id stay, since the id is still a fragment target.
+    private static final String PRUNED_SELECTOR = "script:not([id]), style:not([id])";
+    // Decoded by decodedBody, the HttpClient itself never decompresses.
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final Pattern CHARSET_RE = Pattern.compile("(?i)charset=\\s*\"?([^\\s;\"]+)");
+
+    /** Default TTL for cached search index (ms). Older indexes keep being served while they refresh. */
     private static final long INDEX_TTL_MS = 10 * 60 * 1000;
+    /** Retry delay after a failed index refresh (ms), doubled per consecutive failure up to the max. */
+    private static final long INDEX_RETRY_BASE_MS = 30 * 1000;
+    private static final long INDEX_RETRY_MAX_MS = 30 * 60 * 1000;
+
+    /** Directory for persisted index snapshots when INDEX_SNAPSHOT_DIR isn't set. */
+    private static final String DEFAULT_SNAPSHOT_DIR = "cache";
+    // "FGSI", so a random file in the snapshot dir is never mistaken for one.
+    private static final int SNAPSHOT_MAGIC = 0x46475349;
+
+    /** Searches with fewer exact hits than this also try typo corrections. */
+    private static final int FUZZY_MIN_RESULTS = 3;
+
+    private static final Logger logger = LoggerFactory.getLogger(Scraper.class);
 
     private static final Map<String, CachedIndex> cachedIndexByLang = new ConcurrentHashMap<>();
+    // Keyed by locale and the index URL it resolves to, so only identical downloads are coalesced.
+    private static final SingleFlight<IndexFlightKey, SearchIndex> indexFlights = new SingleFlight<>();
+    private static final Map<String, IndexBackoff> indexBackoffByLang = new ConcurrentHashMap<>();
+
+    // Bumped whenever any locale's index is replaced, so cached query results from older indexes are dropped.
+    private static final AtomicLong indexGeneration = new AtomicLong();
+
+    /** How often DEV_MODE logs the request and cache counters (ms). */
+    private static final long STATS_LOG_INTERVAL_MS = 10 * 60 * 1000;
+
+    /** Max distinct searches whose results are kept. */
+    private static final int QUERY_CACHE_MAX = 512;
+    private static final Map<QueryKey, CachedQuery> cachedQueries = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<QueryKey, CachedQuery> eldest) {
+            return size() > QUERY_CACHE_MAX;
+        }
+    });
+    private static final AtomicLong queryCacheHits = new AtomicLong();
+    private static final AtomicLong queryCacheMisses = new AtomicLong();
+
+    /** Max parsed pages kept for conditional revalidation. */
+    private static final int PAGE_CACHE_MAX = 32;
+    // Access-ordered so the least recently viewed page is evicted first.
+    private static final Map<String, CachedPage> cachedPages = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+            return size() > PAGE_CACHE_MAX;
+        }
+    });
+    // Keyed by canonical page URL, so everyone opening the same page at once shares one request and one parse.
+    private static final SingleFlight<String, CachedPage> pageFlights = new SingleFlight<>();
+    /** How long a rendered embed is reused before its page is checked again (ms). */
+    private static final long EMBED_TTL_MS = 10 * 60 * 1000;
+    /** Max rendered embeds kept. */
+    private static final int EMBED_CACHE_MAX = 128;
+    private static final Map<EmbedKey, CachedEmbed> cachedEmbeds = Collections.synchronizedMap(new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<EmbedKey, CachedEmbed> eldest) {
+            return size() > EMBED_CACHE_MAX;
+        }
+    });
+
+    // Canonical URLs of each locale's index entries, resolved once per index so searches don't parse URLs.
+    private static final Map<String, IndexLinks> indexLinksByLang = new ConcurrentHashMap<>();
+    // Page titles listed in each locale's index, keyed by canonical page URL and rebuilt whenever the index changes.
+    private static final Map<String, Map<String, String>> indexTitlesByLang = new ConcurrentHashMap<>();
+    /** How long a fetched page title is served before it is fetched again in the background (ms). */
+    private static final long FETCHED_TITLE_TTL_MS = 60 * 60 * 1000;
+    /** Max fetched page titles kept. */
+    private static final int FETCHED_TITLE_MAX = 256;
+    // Titles of pages the index doesn't list, e.g. the landing pages linked from /guide top.
+    private static final Map<String, FetchedTitle> fetchedTitles = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FetchedTitle> eldest) {
+            return size() > FETCHED_TITLE_MAX;
+        }
+    });
+
+    /** Max resolved page links kept. */
+    private static final int LINK_CACHE_MAX = 8192;
+    private static final Map<LinkKey, String> resolvedLinks = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LinkKey, String> eldest) {
+            return size() > LINK_CACHE_MAX;
+        }
+    });
+
+    /** Locales whose pages are pre-rendered after each index load, overridable with PRERENDER_LANGS (comma separated, empty disables). */
+    private static final String DEFAULT_PRERENDER_LANGS = Locales.DEFAULT_LANG;
+    /** Pages fetched at once while pre-rendering. */
+    private static final int PRERENDER_CONCURRENCY = 2;
+    /** Pause after each pre-rendered page (ms), keeps the crawl polite towards the guide host. */
+    private static final long PRERENDER_DELAY_MS = 500;
+    /** Max pages pre-rendered per locale. */
+    private static final int PRERENDER_MAX_PAGES = 1000;
+    private static final Set<String> prerenderLangs = parsePrerenderLangs();
+    // Each locale's latest crawl, replaced as a whole when a new index is crawled, so pages from a crawl
+    // still running for an older index land in a set nobody reads anymore. A 304 refresh doesn't crawl again.
+    private static final Map<String, PrerenderedIndex> prerenderedByLang = new ConcurrentHashMap<>();
+    // Coalesces revalidations of expired pre-rendered pages, like the page flights do for fetches.
+    private static final SingleFlight<String, CachedPage> revalidationFlights = new SingleFlight<>();
+    /** Max requests to the guide host at once when UPSTREAM_CONCURRENCY isn't set. */
+    private static final int DEFAULT_UPSTREAM_CONCURRENCY = 8;
+    // Shared by page fetches, index downloads and the pre-renderer, so bursts of interactions queue here instead of hammering the host.
+    // The pre-renderer's requests only get a permit once no other request is waiting for one.
+    private static final AsyncSemaphore upstreamPermits = new AsyncSemaphore(parseUpstreamConcurrency());
+    // Response bytes as received and after decompression, equal for responses sent uncompressed.
+    private static final AtomicLong wireBytes = new AtomicLong();
+    private static final AtomicLong decodedBytes = new AtomicLong();
     private static final HttpClient httpClient = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(15))
             .build();
-    private static final Gson gson = new Gson();
+    // Used by cross-locale searches to load and score every locale at once.
+    private static final ExecutorService searchExecutor = Executors.newFixedThreadPool(Locales.LANGS.size(), daemonThreads("fg-search"));
+    // Builds downloaded search indexes off the interaction threads and runs backoff retries.
+    private static final ScheduledExecutorService indexRefresher = Executors.newScheduledThreadPool(2, daemonThreads("fg-index-refresh"));
+    // Parses pages and renders embeds off the caller threads. Bodies are streamed into the parser, so these threads
+    // also wait on the network while a page arrives; the Java 21 build runs them on virtual threads for that reason.
+    private static final ExecutorService renderExecutor = newRenderExecutor();
+    private static final ExecutorService prerenderExecutor = Executors.newFixedThreadPool(PRERENDER_CONCURRENCY, daemonThreads("fg-prerender"));
+
+    private static ExecutorService newRenderExecutor() {
+        ExecutorService virtual = VirtualThreads.newExecutor("fg-render");
+        if (virtual != null) return virtual;
+        return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), daemonThreads("fg-render"));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
 
     /**
      * Checks whether an id or URL contains any blacklisted substrings.
@@ -91,98 +255,193 @@ public class Scraper {
         return truncateWithEllipsis(text, EMBED_DESC_LIMIT);
     }
 
+    private static String truncateWithEllipsis(StringBuilder text) {
+        if (text.length() > EMBED_DESC_LIMIT) {
+            text.setLength(EMBED_DESC_LIMIT - 3);
+            text.append("...");
+        }
+        return text.toString();
+    }
+
     /**
-     * Converts an UL/OL element into a text list.
-     * @param listEl UL/OL element.
-     * @param ordered True for ordered list.
-     * @return List items joined by newlines.
+     * Renders one content block into Discord markdown in a single StringBuilder.
+     * Walking the DOM stops as soon as the text is over the budget, what was written being exactly
+     * the start of the full rendering, so a huge block costs no more than the part an embed can show.
      */
-    private static String getListText(Element listEl, boolean ordered, String currentUrl) {
-        List<String> lines = new ArrayList<>();
-        Elements items = listEl.children().select("li");
-        int index = 1;
-        for (Element li : items) {
-            String t = getInlineMarkdown(li, currentUrl);
-            String clean = t != null ? t.trim() : "";
-            if (!clean.isEmpty()) {
-                lines.add((ordered ? (index++ + ".") : "-") + " " + clean);
+    private static final class MarkdownWriter {
+        private final StringBuilder out = new StringBuilder();
+        private final String currentUrl;
+        private final int budget;
+        // Start of the text being trimmed (the block or a list item); leading whitespace there is dropped like trim() would.
+        private int unitStart;
+        private int skipped;
+
+        MarkdownWriter(String currentUrl, int budget) {
+            this.currentUrl = currentUrl;
+            this.budget = budget;
+        }
+
+        /**
+         * Inline markdown of the element's children, trimmed.
+         */
+        String block(Element el) {
+            unitStart = 0;
+            appendInline(el);
+            trimEnd(0);
+            return out.toString();
+        }
+
+        /**
+         * Converts an UL/OL element into a text list, one trimmed item per line.
+         * @param ordered True for ordered list.
+         */
+        String list(Element listEl, boolean ordered) {
+            int index = 1;
+            for (Element li : listEl.children().select("li")) {
+                int lineStart = out.length();
+                if (lineStart > 0) out.append('\n');
+                out.append(ordered ? index + "." : "-").append(' ');
+                unitStart = out.length();
+                appendInline(li);
+                trimEnd(unitStart);
+                if (out.length() == unitStart) {
+                    out.setLength(lineStart);
+                    continue;
+                }
+                if (ordered) index++;
+                if (full()) break;
+            }
+            return out.toString();
+        }
+
+        private void appendInline(Element el) {
+            for (Node child : el.childNodes()) {
+                if (child instanceof TextNode) {
+                    appendText(((TextNode) child).text());
+                } else if (child instanceof Element) {
+                    Element c = (Element) child;
+                    String tag = c.tagName().toLowerCase();
+                    switch (tag) {
+                        case "br" -> appendText("\n");
+                        case "strong", "b" -> appendWrapped(c, "**");
+                        case "em", "i" -> appendWrapped(c, "*");
+                        case "code", "kbd" -> appendCode(c);
+                        case "a" -> appendLink(c);
+                        default -> appendInline(c);
+                    }
+                }
+                if (full()) return;
+            }
+        }
+
+        private void appendWrapped(Element el, String marker) {
+            int mark = out.length();
+            out.append(marker);
+            appendInline(el);
+            if (out.length() == mark + marker.length()) out.setLength(mark);
+            else if (!full()) out.append(marker);
+        }
+
+        private void appendCode(Element el) {
+            int mark = out.length();
+            out.append('`');
+            int innerStart = out.length();
+            appendInline(el);
+            if (out.length() == innerStart) {
+                out.setLength(mark);
+                return;
             }
+            String inner = out.substring(innerStart);
+            if (inner.indexOf('`') >= 0) {
+                out.setLength(innerStart);
+                out.append(inner.replace("`", "\u200B`"));
+            }
+            if (!full()) out.append('`');
+        }
+
+        private void appendLink(Element el) {
+            String href = el.attr("href");
+            String abs = resolveLink(currentUrl, href);
+            if (!abs.isEmpty()) out.append('[');
+            int textStart = out.length();
+            int skippedBefore = skipped;
+            appendInline(el);
+            if (out.length() == textStart && skipped == skippedBefore) appendText(href);
+            if (!abs.isEmpty() && !full()) out.append("](").append(abs).append(')');
+        }
+
+        private void appendText(String text) {
+            int from = 0;
+            if (out.length() == unitStart) {
+                while (from < text.length() && text.charAt(from) <= ' ') from++;
+                skipped += from;
+            }
+            out.append(text, from, text.length());
+        }
+
+        private void trimEnd(int from) {
+            int len = out.length();
+            while (len > from && out.charAt(len - 1) <= ' ') len--;
+            out.setLength(len);
+        }
+
+        // Over budget, and ending in a character trimming keeps.
+        private boolean full() {
+            int len = out.length();
+            return len > budget && out.charAt(len - 1) > ' ';
         }
-        return String.join("\n", lines);
     }
 
     /**
-     * Converts element children to inline Discord markdown.
+     * Absolute, locale-pinned target of a link on a page, or "" if it has none.
+     * Memoized per page and href, the locale being the page's own.
      */
-    private static String getInlineMarkdown(Element el, String currentUrl) {
-        StringBuilder out = new StringBuilder();
-        for (Node child : el.childNodes()) {
-            if (child instanceof TextNode) {
-                out.append(((TextNode) child).text());
-            } else if (child instanceof Element) {
-                Element c = (Element) child;
-                String tag = c.tagName().toLowerCase();
-                switch (tag) {
-                    case "br" -> out.append("\n");
-                    case "strong", "b" -> {
-                        String inner = getInlineMarkdown(c, currentUrl);
-                        if (!inner.isEmpty()) out.append("**").append(inner).append("**");
-                    }
-                    case "em", "i" -> {
-                        String inner = getInlineMarkdown(c, currentUrl);
-                        if (!inner.isEmpty()) out.append("*").append(inner).append("*");
-                    }
-                    case "code", "kbd" -> {
-                        String inner = getInlineMarkdown(c, currentUrl).replace("`", "\u200B`");
-                        if (!inner.isEmpty()) out.append("`").append(inner).append("`");
-                    }
-                    case "a" -> {
-                        String href = c.attr("href");
-                        String text = getInlineMarkdown(c, currentUrl);
-                        if (text.isEmpty()) text = href;
-                        try {
-                            String abs = "";
-                            String baseForResolve = currentUrl != null ? currentUrl : BASE;
-                            String langForLink = Locales.DEFAULT_LANG;
-                            try {
-                                URL u = new URL(baseForResolve);
-                                String[] parts = u.getPath().split("/");
-                                int rootIdx = -1;
-                                for (int i = 0; i < parts.length; i++) {
-                                    if ("Field-Guide-Modern".equals(parts[i]) || "Field-Guide".equals(parts[i])) {
-                                        rootIdx = i;
-                                        break;
-                                    }
-                                }
-                                if (rootIdx != -1 && rootIdx + 1 < parts.length) {
-                                    String maybe = parts[rootIdx + 1];
-                                    if (Locales.LANGS.contains(maybe)) langForLink = maybe;
-                                }
-                            } catch (Exception ignored) {}
-
-                            if (href == null || href.isEmpty()) {
-                                abs = "";
-                            } else if (href.startsWith("#")) {
-                                abs = ensureLang(new URL(new URL(baseForResolve), href).toString(), langForLink);
-                            } else if (href.matches("^https?://.*")) {
-                                abs = canonicalLangHtml(href, langForLink);
-                            } else {
-                                abs = canonicalLangHtml(new URL(new URL(baseForResolve), href).toString(), langForLink);
-                            }
-                            if (!abs.isEmpty()) {
-                                out.append("[").append(text).append("](").append(abs).append(")");
-                            } else {
-                                out.append(text);
-                            }
-                        } catch (Exception e) {
-                            out.append(text);
-                        }
+    private static String resolveLink(String currentUrl, String href) {
+        LinkKey key = new LinkKey(currentUrl, href);
+        String abs = resolvedLinks.get(key);
+        if (abs != null) return abs;
+
+        String baseForResolve = currentUrl != null ? currentUrl : BASE;
+        abs = LinkCanonicalizer.resolveLink(baseForResolve, href);
+        if (abs == null) abs = resolveLinkByUrl(baseForResolve, href);
+        resolvedLinks.put(key, abs);
+        return abs;
+    }
+
+    /**
+     * The general form of {@link #resolveLink}, built on java.net.URL, for links the canonicalizer doesn't handle.
+     */
+    private static String resolveLinkByUrl(String baseForResolve, String href) {
+        try {
+            String langForLink = Locales.DEFAULT_LANG;
+            try {
+                URL u = new URL(baseForResolve);
+                String[] parts = u.getPath().split("/");
+                int rootIdx = -1;
+                for (int i = 0; i < parts.length; i++) {
+                    if ("Field-Guide-Modern".equals(parts[i]) || "Field-Guide".equals(parts[i])) {
+                        rootIdx = i;
+                        break;
                     }
-                    default -> out.append(getInlineMarkdown(c, currentUrl));
                 }
+                if (rootIdx != -1 && rootIdx + 1 < parts.length) {
+                    String maybe = parts[rootIdx + 1];
+                    if (Locales.LANGS.contains(maybe)) langForLink = maybe;
+                }
+            } catch (Exception ignored) {}
+
+            if (href == null || href.isEmpty()) {
+                return "";
+            } else if (href.startsWith("#")) {
+                return ensureLangByUrl(new URL(new URL(baseForResolve), href).toString(), langForLink);
+            } else if (href.matches("^https?://.*")) {
+                return canonicalLangHtmlByUrl(href, langForLink);
+            } else {
+                return canonicalLangHtmlByUrl(new URL(new URL(baseForResolve), href).toString(), langForLink);
             }
+        } catch (Exception e) {
+            return "";
         }
-        return out.toString();
     }
 
     /**
@@ -226,6 +485,7 @@ public class Scraper {
 
     /**
      * Converts an element into plain text, handling lists specially.
+     * Text past the embed limit is left out, as no description can show it.
      * @return Text content or empty string if skipped.
      */
     private static String nodeToText(Element el, String currentUrl) {
@@ -235,9 +495,9 @@ public class Scraper {
         if (cls.contains("crafting-recipe-item-count")) return "";
         if (isWithin(el, ".crafting-recipe, .minecraft-text, .item-header, .glb-viewer, .glb-viewer-container")) return "";
         if (tag.startsWith("h")) return "";
-        if (tag.equals("ul")) return getListText(el, false, currentUrl);
-        if (tag.equals("ol")) return getListText(el, true, currentUrl);
-        String t = getInlineMarkdown(el, currentUrl).trim();
+        if (tag.equals("ul")) return new MarkdownWriter(currentUrl, EMBED_DESC_LIMIT).list(el, false);
+        if (tag.equals("ol")) return new MarkdownWriter(currentUrl, EMBED_DESC_LIMIT).list(el, true);
+        String t = new MarkdownWriter(currentUrl, EMBED_DESC_LIMIT).block(el);
         if (STAT_PREFIX_RE.matcher(t).find()) return "";
         if (t.matches("^\\d+$")) return "";
         return t;
@@ -261,6 +521,11 @@ public class Scraper {
      * Ensures URLs contain the selected locale segment.
      */
     public static String ensureLang(String url, String lang) {
+        String fast = LinkCanonicalizer.ensureLang(url, lang);
+        return fast != null ? fast : ensureLangByUrl(url, lang);
+    }
+
+    private static String ensureLangByUrl(String url, String lang) {
         try {
             String safe = Locales.LANGS.contains(lang) ? lang : Locales.DEFAULT_LANG;
             URL u = new URL(url);
@@ -299,8 +564,13 @@ public class Scraper {
      * Sets a URL to HTML, removes hash, and enforces selected lang.
      */
     public static String canonicalLangHtml(String url, String lang) {
+        String fast = LinkCanonicalizer.canonicalLangHtml(url, lang);
+        return fast != null ? fast : canonicalLangHtmlByUrl(url, lang);
+    }
+
+    private static String canonicalLangHtmlByUrl(String url, String lang) {
         try {
-            String ensured = ensureLang(url, lang);
+            String ensured = ensureLangByUrl(url, lang);
             URL u = new URL(ensured);
             String path = u.getPath();
             String[] pathParts = path.split("/");
@@ -316,7 +586,7 @@ public class Scraper {
 
             return new URL(u.getProtocol(), u.getHost(), u.getPort(), path + (u.getQuery() != null ? "?" + u.getQuery() : "")).toString();
         } catch (Exception e) {
-            return ensureLang(url, lang);
+            return ensureLangByUrl(url, lang);
         }
     }
 
@@ -383,380 +653,814 @@ public class Scraper {
     }
 
     /**
-     * Fetches and caches the search index.
+     * Kicks off a refresh unless the locale is backing off after failed attempts.
      */
-    private static List<SearchIndexEntry> fetchSearchIndexForLang(String lang, String override) throws Exception {
-        long now = System.currentTimeMillis();
-        CachedIndex cache = cachedIndexByLang.get(lang);
-        if (cache != null && (now - cache.timestamp) < INDEX_TTL_MS) {
-            return cache.data;
-        }
-
-        String url = buildSearchIndexUrlForLang(lang, override);
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("Cache-Control", "no-cache")
-                .timeout(Duration.ofSeconds(15))
-                .GET()
-                .build();
-
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        List<SearchIndexEntry> data = gson.fromJson(response.body(), new TypeToken<List<SearchIndexEntry>>(){}.getType());
-        if (data == null) throw new RuntimeException("Invalid search_index.json format for " + lang);
-        cachedIndexByLang.put(lang, new CachedIndex(data, now));
-        return data;
+    private static void refreshIndexInBackground(String lang, String override) {
+        IndexBackoff backoff = indexBackoffByLang.get(lang);
+        if (backoff != null && System.currentTimeMillis() < backoff.nextAttemptAt()) return;
+        loadSearchIndex(lang, override);
     }
 
     /**
-     * Sets a query string into lowercase terms.
+     * Starts downloading a locale's index, or joins the download already in flight for it.
+     * On failure the last good index stays cached and a retry is scheduled with exponential backoff.
      */
-    private static List<String> tokenize(String q) {
-        if (q == null || q.isEmpty()) return Collections.emptyList();
-        String processed = q.toLowerCase()
-                .replaceAll("[_#./-]+", " ")
-                .replaceAll("[^\\p{L}\\p{N}\\s]", "")
-                .trim();
-        return Arrays.stream(processed.split("\\s+"))
-                .filter(s -> !s.isEmpty())
-                .collect(Collectors.toList());
+    private static CompletableFuture<SearchIndex> loadSearchIndex(String lang, String override) {
+        String url = buildSearchIndexUrlForLang(lang, override);
+        return indexFlights.run(new IndexFlightKey(lang, url), () -> downloadSearchIndexAsync(lang, override, url));
+    }
+
+    private static CompletableFuture<SearchIndex> downloadSearchIndexAsync(String lang, String override, String url) {
+        CachedIndex previous = cachedIndexByLang.get(lang);
+        // The cached index only has validators for the URL it came from.
+        CachedIndex revalidated = previous != null && previous.url.equals(url) ? previous : null;
+        return downloadSearchIndex(lang, url, revalidated).handle((fresh, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                IndexBackoff backoff = indexBackoffByLang.merge(lang, IndexBackoff.after(1), (old, ignored) -> IndexBackoff.after(old.failures() + 1));
+                if (Main.DEV_MODE) logger.warn("[Scraper] search index refresh failed for {} ({} in a row):", lang, backoff.failures(), cause);
+                if (cachedIndexByLang.containsKey(lang)) {
+                    long delay = Math.max(0, backoff.nextAttemptAt() - System.currentTimeMillis());
+                    indexRefresher.schedule(() -> loadSearchIndex(lang, override), delay, TimeUnit.MILLISECONDS);
+                }
+                throw new CompletionException(cause);
+            }
+            boolean changed = previous == null || previous.index != fresh.index;
+            // Links first, so the first searches against the new index find them ready.
+            if (changed) indexLoaded(lang, fresh.index);
+            cachedIndexByLang.put(lang, fresh);
+            if (changed) indexGeneration.incrementAndGet();
+            indexBackoffByLang.remove(lang);
+            // A 304 keeps the same index, which is already on disk. Snapshots are per locale and only
+            // read back for the default URL, so an override search must not replace it.
+            if (changed && override == null) writeIndexSnapshot(lang, url, fresh);
+            if (override == null) schedulePrerender(lang, fresh.index);
+            return fresh.index;
+        });
     }
 
     /**
-     * Escapes a string.
+     * Resolves the links and page titles of a newly loaded index.
      */
-    private static String escapeForRegex(String s) {
-        return Pattern.quote(s);
+    private static void indexLoaded(String lang, SearchIndex idx) {
+        IndexLinks links = IndexLinks.of(lang, idx);
+        indexLinksByLang.put(lang, links);
+        indexTitlesByLang.put(lang, indexTitles(idx, links));
     }
 
     /**
-     * Checks if a term appears as a standalone word in text.
-     * Word boundaries are defined by transitions.
+     * The resolved links of an index, resolving them here if it isn't the one registered for its locale.
      */
-    private static boolean hasStandaloneTerm(String text, String term) {
-        if (text == null || term == null || text.isEmpty() || term.isEmpty()) return false;
-        String esc = escapeForRegex(term);
-        // regex moment.
-        Pattern re = Pattern.compile("(?:^|[^\\p{L}\\p{N}])" + esc + "(?:[^\\p{L}\\p{N}]|$)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CHARACTER_CLASS);
-        return re.matcher(text).find();
+    private static IndexLinks indexLinks(String lang, SearchIndex idx) {
+        IndexLinks links = indexLinksByLang.get(lang);
+        return links != null && links.index() == idx ? links : IndexLinks.of(lang, idx);
     }
 
     /**
-     * Compares a search index row against query terms.
+     * Collects the title of every page the index has an entry for, the fragment-less entries being the pages themselves.
      */
-    private static int scoreEntry(SearchIndexEntry entry, List<String> terms) {
-        String title = entry.entry != null ? entry.entry : "";
-        String content = entry.content != null ? entry.content : "";
-        int score = 0;
-        for (String t : terms) {
-            if (hasStandaloneTerm(title, t)) score += 4;
-            if (hasStandaloneTerm(content, t)) score += 2;
+    private static Map<String, String> indexTitles(SearchIndex idx, IndexLinks links) {
+        Map<String, String> titles = new HashMap<>();
+        for (int doc = 0; doc < idx.size(); doc++) {
+            String url = idx.url(doc);
+            String title = idx.title(doc);
+            if (url == null || url.isEmpty() || title == null || title.isBlank()) continue;
+            if (links.fragments()[doc] == null) titles.putIfAbsent(links.pages()[doc], title.trim());
         }
-        for (String t : terms) {
-            String esc = escapeForRegex(t);
-            Pattern reStart = Pattern.compile("^(?:" + esc + ")(?:[^\\p{L}\\p{N}]|$)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CHARACTER_CLASS);
-            if (reStart.matcher(title).find()) score += 1;
-        }
-        return score;
+        return titles;
     }
 
     /**
-     * Searches the JSON index and returns matches as URLs with titles.
+     * Downloads a locale's search_index.json and builds its inverted index on the index executor.
+     * If a previous copy is given its validators are sent, and a 304 reuses its index without parsing.
+     * No thread waits for an upstream permit; the request is sent once one is free.
      */
-    public static List<SearchResult> searchGuideViaIndex(String query, String selectedLang, String searchIndexUrl, int limit) {
-        List<String> terms = tokenize(query);
-        if (terms.isEmpty()) return Collections.emptyList();
-
-        String effectiveLang = Locales.LANGS.contains(selectedLang) ? selectedLang : Locales.DEFAULT_LANG;
-
-        List<ScoredResult> combined = new ArrayList<>();
-        for (String lang : Locales.LANGS) {
-            List<SearchIndexEntry> idx;
-            try {
-                idx = fetchSearchIndexForLang(lang, searchIndexUrl);
-            } catch (Exception e) {
-                continue;
-            }
-            for (SearchIndexEntry e : idx) {
-                int s = scoreEntry(e, terms);
-                if (s > 0) {
-                    combined.add(new ScoredResult(s, e.entry != null ? e.entry : "Field Guide", buildUrlFromPath(e.url, lang), lang));
-                }
-            }
+    private static CompletableFuture<CachedIndex> downloadSearchIndex(String lang, String url, CachedIndex previous) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .header("Cache-Control", "no-cache")
+                    .header("Accept-Encoding", ACCEPT_ENCODING)
+                    .timeout(Duration.ofSeconds(15))
+                    .GET();
+            if (previous != null) addValidators(builder, previous.etag, previous.lastModified);
+            request = builder.build();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        combined.sort((a, b) -> Integer.compare(b.score, a.score));
+        // Held until the body is read, the connection stays open while it streams into the index.
+        return upstreamPermits.run(() -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    try {
+                        return readSearchIndexResponse(lang, url, previous, response);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, indexRefresher));
+    }
 
-        Set<String> seen = new HashSet<>();
-        List<SearchResult> top = new ArrayList<>();
-        int cap = Math.max(1, Math.min(limit, 500));
+    private static CachedIndex readSearchIndexResponse(String lang, String url, CachedIndex previous, HttpResponse<InputStream> response) throws IOException {
+        // Streamed straight into the index so the raw JSON is never held in memory as a whole.
+        try (Reader body = new BufferedReader(new InputStreamReader(decodedBody(response), StandardCharsets.UTF_8))) {
+            long now = System.currentTimeMillis();
+            if (response.statusCode() == 304 && previous != null) {
+                return new CachedIndex(previous.index, url, now, previous.etag, previous.lastModified);
+            }
+            if (response.statusCode() != 200) throw new IOException("HTTP " + response.statusCode() + " for " + url);
 
-        for (ScoredResult r : combined) {
-            if (!r.lang.equals(effectiveLang)) continue;
-            String abs = r.url;
-            if (!seen.contains(abs)) {
-                seen.add(abs);
-                top.add(new SearchResult(r.title, abs));
+            SearchIndex index;
+            try {
+                index = SearchIndex.read(body, true, SearchIndex.Analyzer.forLang(lang));
+            } catch (IllegalStateException | MalformedJsonException e) {
+                throw new RuntimeException("Invalid search_index.json format for " + lang, e);
             }
-            if (top.size() >= cap) break;
+            return new CachedIndex(index, url, now,
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
         }
-        return top;
     }
 
     /**
-     * Try JSON index first then fallback to BFS search.
+     * Response body decoded according to its Content-Encoding, with bytes counted before and after decoding.
      */
-    public static List<SearchResult> searchGuideFast(String query, String selectedLang, int limit) {
+    private static InputStream decodedBody(HttpResponse<InputStream> response) throws IOException {
+        InputStream wire = new CountingInputStream(response.body(), wireBytes);
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        // Nothing to decode without a body.
+        if (response.statusCode() == 204 || response.statusCode() == 304) encoding = "";
         try {
-            List<SearchResult> viaIndex = searchGuideViaIndex(query, selectedLang, null, limit);
-            if (!viaIndex.isEmpty()) return viaIndex;
-        } catch (Exception ignored) {}
-        return Collections.emptyList();
+            InputStream decoded = switch (encoding) {
+                case "", "identity" -> wire;
+                case "gzip", "x-gzip" -> new GZIPInputStream(wire, 8192);
+                case "deflate" -> inflating(wire);
+                default -> throw new IOException("Unsupported Content-Encoding " + encoding);
+            };
+            return new CountingInputStream(decoded, decodedBytes);
+        } catch (IOException e) {
+            wire.close();
+            throw e;
+        }
     }
 
     /**
-     * Fetches HTML content for a given URL.
+     * Servers disagree on whether "deflate" means zlib-wrapped or raw deflate, the zlib header tells them apart.
      */
-    private static Document fetchHtml(String url) throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .timeout(Duration.ofSeconds(15))
-                .GET()
-                .build();
+    private static InputStream inflating(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        int cmf = buffered.read();
+        int flg = buffered.read();
+        buffered.reset();
+        boolean zlib = flg != -1 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(buffered, inflater, 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        return Jsoup.parse(response.body(), url);
+    /**
+     * Adds If-None-Match / If-Modified-Since headers for whichever validators are known.
+     */
+    private static void addValidators(HttpRequest.Builder builder, String etag, String lastModified) {
+        if (etag != null) builder.header("If-None-Match", etag);
+        if (lastModified != null) builder.header("If-Modified-Since", lastModified);
     }
 
     /**
-     * Extracts the first image src.
+     * Loads every locale's persisted index so searches are answered before the first download,
+     * then revalidates the loaded ones against the live index in the background.
+     * Missing, outdated or unreadable snapshots are skipped, those locales load on first search as before.
+     * Unreadable ones are deleted as well.
      */
-    private static String extractFirstImage(Document doc, Element root) {
-        Element scope = root != null ? root : doc.body();
-        Element img = scope.selectFirst("img");
-        if (img == null) return null;
-        String src = img.attr("src");
-        if (src == null || src.isEmpty()) return null;
-        if (src.startsWith("http")) return src;
-        try {
-            return new URL(new URL(BASE), src).toString();
-        } catch (Exception e) {
-            return null;
+    public static void loadIndexSnapshots() {
+        for (String lang : Locales.LANGS) {
+            CachedIndex snapshot;
+            try {
+                snapshot = readIndexSnapshot(lang);
+            } catch (Exception e) {
+                if (Main.DEV_MODE) logger.warn("[Scraper] deleting unreadable index snapshot for {}:", lang, e);
+                try {
+                    Files.deleteIfExists(snapshotPath(lang));
+                } catch (IOException ignored) {}
+                continue;
+            }
+            if (snapshot == null) continue;
+            if (cachedIndexByLang.putIfAbsent(lang, snapshot) == null) {
+                indexGeneration.incrementAndGet();
+                indexLoaded(lang, snapshot.index);
+            }
+            loadSearchIndex(lang, null);
         }
     }
 
-    private static String extractFirstImage(Document doc) {
-        return extractFirstImage(doc, null);
+    private static Path snapshotPath(String lang) {
+        String dir = System.getenv("INDEX_SNAPSHOT_DIR");
+        if (dir == null || dir.isEmpty()) dir = DEFAULT_SNAPSHOT_DIR;
+        return Paths.get(dir, "search_index_" + lang + ".bin");
     }
 
     /**
-     * Extracts a title from the page (prefers h1/h2).
+     * Maps a locale's snapshot file and rebuilds its index.
+     * @return The cached index, or null if there is no usable snapshot for the current index URL.
      */
-    private static String extractTitle(Document doc) {
-        Element h1 = doc.selectFirst("h1");
-        if (h1 != null && !h1.text().trim().isEmpty()) return h1.text().trim();
-        Element h2 = doc.selectFirst("h2");
-        if (h2 != null && !h2.text().trim().isEmpty()) return h2.text().trim();
-        String title = doc.title().trim();
-        return !title.isEmpty() ? title : "Field Guide";
+    private static CachedIndex readIndexSnapshot(String lang) throws IOException {
+        Path file = snapshotPath(lang);
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 8 || in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SearchIndex.SNAPSHOT_VERSION) return null;
+            // Snapshot of an index from somewhere else, e.g. SEARCH_INDEX_URL changed since.
+            String url = buildSearchIndexUrlForLang(lang, null);
+            if (!url.equals(SearchIndex.readString(in))) return null;
+            long timestamp = in.getLong();
+            String etag = SearchIndex.readString(in);
+            String lastModified = SearchIndex.readString(in);
+            return new CachedIndex(SearchIndex.readSnapshot(in), url, timestamp, etag, lastModified);
+        }
     }
 
     /**
-     * Fetches a page and returns its localized title and URL.
+     * Persists a freshly built index with the validators it was fetched with.
+     * Written to a temp file and moved into place, so a crash never leaves a half-written snapshot.
      */
-    public static SearchResult fetchPageTitle(String urlOrPath, String lang) {
+    private static void writeIndexSnapshot(String lang, String url, CachedIndex cache) {
+        Path file = snapshotPath(lang).toAbsolutePath();
+        Path tmp = null;
         try {
-            String[] parsed = parsePathAndFragment(urlOrPath, lang);
-            String baseUrl = parsed[0];
-            Document doc = fetchHtml(baseUrl);
-            String title = extractTitle(doc);
-            return new SearchResult(!title.isEmpty() ? title : "Field Guide", baseUrl);
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SearchIndex.SNAPSHOT_VERSION);
+                SearchIndex.writeString(out, url);
+                out.writeLong(cache.timestamp);
+                SearchIndex.writeString(out, cache.etag);
+                SearchIndex.writeString(out, cache.lastModified);
+                cache.index.writeSnapshot(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (Exception e) {
-            String[] parsed = parsePathAndFragment(urlOrPath, lang);
-            return new SearchResult("Field Guide", parsed[0]);
+            if (Main.DEV_MODE) logger.warn("[Scraper] failed to write index snapshot for {}:", lang, e);
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static int parseUpstreamConcurrency() {
+        String raw = System.getenv("UPSTREAM_CONCURRENCY");
+        try {
+            if (raw != null && !raw.isEmpty()) return Math.max(1, Integer.parseInt(raw.trim()));
+        } catch (NumberFormatException ignored) {}
+        return DEFAULT_UPSTREAM_CONCURRENCY;
+    }
+
+    private static Set<String> parsePrerenderLangs() {
+        String raw = System.getenv("PRERENDER_LANGS");
+        if (raw == null) raw = DEFAULT_PRERENDER_LANGS;
+        Set<String> langs = new LinkedHashSet<>();
+        for (String lang : raw.split(",")) {
+            if (Locales.LANGS.contains(lang.trim())) langs.add(lang.trim());
         }
+        return langs;
     }
 
     /**
-     * Builds a short intro by scanning main content blocks near the title.
+     * Queues every page of a locale's index for pre-rendering, unless it was already done for this index.
+     * Pages and the fragments the index links to are rendered into embeds, so first clicks after a
+     * deploy or restart don't wait on the guide. The crawl stops early once a newer index replaces this one.
      */
-    private static String extractSummaryIntro(Document doc, String pageTitle, String currentUrl) {
-        Elements headers = doc.select("h1, h2, h3");
-        for (Element header : headers) {
-            if (header.text().trim().equals(pageTitle)) {
-                String id = header.attr("id");
-                if (id != null && !id.isEmpty() && !isBlacklistedFragment(id)) {
-                    SectionData sect = extractSection(doc, id, currentUrl);
-                    if (sect != null && sect.description != null && !sect.description.isEmpty()) {
-                        return sect.description;
-                    }
-                }
-                break;
+    private static void schedulePrerender(String lang, SearchIndex idx) {
+        if (!prerenderLangs.contains(lang)) return;
+        PrerenderedIndex crawl = new PrerenderedIndex(idx);
+        if (prerenderedByLang.merge(lang, crawl, (old, fresh) -> old.index == idx ? old : fresh) != crawl) return;
+
+        // Distinct pages, each with the fragments search results point at.
+        IndexLinks links = indexLinks(lang, idx);
+        Map<String, Set<String>> fragmentsByPage = new LinkedHashMap<>();
+        for (int doc = 0; doc < idx.size(); doc++) {
+            String url = idx.url(doc);
+            if (url == null || url.isEmpty() || isBlacklistedFragment(url)) continue;
+            String page = links.pages()[doc];
+            Set<String> fragments = fragmentsByPage.get(page);
+            if (fragments == null) {
+                if (fragmentsByPage.size() >= PRERENDER_MAX_PAGES) continue;
+                fragments = new LinkedHashSet<>();
+                fragmentsByPage.put(page, fragments);
             }
+            if (links.fragments()[doc] != null) fragments.add(links.fragments()[doc]);
         }
 
-        Element root = doc.selectFirst(".col-md-9");
-        Element scope = root != null ? root : doc.body();
-        List<String> blocks = new ArrayList<>();
-        int currentLen = 0;
-        int sepLen = 2;
+        if (Main.DEV_MODE) logger.info("[Scraper] pre-rendering {} pages for {}", fragmentsByPage.size(), lang);
+        for (Map.Entry<String, Set<String>> page : fragmentsByPage.entrySet()) {
+            prerenderExecutor.execute(() -> prerenderPage(lang, crawl, page.getKey(), page.getValue()));
+        }
+    }
 
-        for (Element el : scope.select("p, ul, ol")) {
-            String t = nodeToText(el, currentUrl);
-            if (t == null || t.isEmpty()) continue;
-            if (STAT_PREFIX_RE.matcher(t).find()) continue;
-            int addLen = (blocks.isEmpty() ? 0 : sepLen) + t.length();
-            if (currentLen + addLen > EMBED_DESC_LIMIT) break;
-            blocks.add(t);
-            currentLen += addLen;
+    private static void prerenderPage(String lang, PrerenderedIndex crawl, String baseUrl, Set<String> fragments) {
+        try {
+            if (prerenderedByLang.get(lang) != crawl) return;
+
+            // Low priority and outside the page flights, so users' requests never queue behind the crawl.
+            CachedPage fetched = await(downloadPageAsync(baseUrl, cachedPages.get(baseUrl), true));
+            // Keyed by fragment, null for the page itself.
+            Map<String, MessageEmbed> embeds = new HashMap<>();
+            embeds.put(null, renderEmbed(fetched.page, null));
+            for (String fragment : fragments) embeds.put(fragment, renderEmbed(fetched.page, fragment));
+            crawl.pages.put(baseUrl, new PrerenderedPage(embeds, fetched.etag, fetched.lastModified));
+            Thread.sleep(PRERENDER_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (Main.DEV_MODE) logger.warn("[Scraper] pre-render failed for {}: {}", baseUrl, e.toString());
         }
+    }
 
-        String text = String.join("\n\n", blocks);
-        return truncateWithEllipsis(text);
+    /**
+     * Sets a query string into lowercase terms.
+     */
+    private static List<String> tokenize(String q) {
+        if (q == null || q.isEmpty()) return Collections.emptyList();
+        String processed = q.toLowerCase(Locale.ROOT)
+                .replaceAll("[_#./-]+", " ")
+                .replaceAll("[^\\p{L}\\p{N}\\s]", "")
+                .trim();
+        return Arrays.stream(processed.split("\\s+"))
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
     }
 
     /**
-     * Extracts a section's text and image.
+     * Searches the JSON index of the selected locale and returns matches as URLs with titles.
      */
-    private static SectionData extractSection(Document doc, String fragmentId, String currentUrl) {
-        if (fragmentId == null || fragmentId.isEmpty()) return null;
-        if (isBlacklistedFragment(fragmentId)) return null;
+    public static List<SearchResult> searchGuideViaIndex(String query, String selectedLang, String searchIndexUrl, int limit) {
+        return searchGuideViaIndex(query, selectedLang, searchIndexUrl, limit, false);
+    }
 
-        Element el = doc.getElementById(fragmentId);
-        if (el == null) return null;
+    /**
+     * Blocking form of {@link #searchAsync(String, String, String, int, boolean)}.
+     * @return Results, best first, or an empty list on failure. The list is shared and must not be modified.
+     */
+    public static List<SearchResult> searchGuideViaIndex(String query, String selectedLang, String searchIndexUrl, int limit, boolean crossLocale) {
+        try {
+            return searchAsync(query, selectedLang, searchIndexUrl, limit, crossLocale).join();
+        } catch (Exception ignored) {}
+        return Collections.emptyList();
+    }
 
-        String tag = el.tagName().toLowerCase();
-        Integer level = null;
-        if (tag.startsWith("h")) {
-            try {
-                level = Integer.parseInt(tag.substring(1));
-            } catch (NumberFormatException e) {
-                level = 6;
-            }
+    /**
+     * Locales a search covers; with crossLocale the selected one comes first so it wins score ties.
+     */
+    private static List<String> searchLangs(String effectiveLang, boolean crossLocale) {
+        if (!crossLocale) return List.of(effectiveLang);
+        List<String> langs = new ArrayList<>();
+        langs.add(effectiveLang);
+        for (String lang : Locales.LANGS) {
+            if (!lang.equals(effectiveLang)) langs.add(lang);
         }
+        return langs;
+    }
 
-        List<String> parts = new ArrayList<>();
-        Element cursor = el.nextElementSibling();
-        final Integer finalLevel = level;
-
-        while (cursor != null) {
-            String tagC = cursor.tagName().toLowerCase();
-            if (tagC.startsWith("h")) {
-                int lvl;
-                try {
-                    lvl = Integer.parseInt(tagC.substring(1));
-                } catch (NumberFormatException e) {
-                    lvl = 6;
-                }
-                if (finalLevel != null && lvl <= finalLevel) break;
-            }
-
-            Element contentRoot = el.closest(".col-md-9");
-            Element cursorForCheck = cursor;
-            if (contentRoot != null && contentRoot.select("*").stream().noneMatch(e -> e.equals(cursorForCheck))) break;
-            if (isBreadcrumb(cursor)) break;
+    /**
+     * Merges per-locale top lists into the final results, deduplicated by URL.
+     * @param sort Re-sort by score, needed when there is more than one list. The sort is stable so ties keep locale order.
+     */
+    private static List<SearchResult> mergeResults(List<List<ScoredResult>> perLocale, boolean sort, int cap) {
+        List<ScoredResult> combined = new ArrayList<>();
+        for (List<ScoredResult> scored : perLocale) combined.addAll(scored);
+        if (sort) combined.sort((a, b) -> Float.compare(b.score, a.score));
 
-            if (tagC.startsWith("h")) {
-                int lvl;
-                try {
-                    lvl = Integer.parseInt(tagC.substring(1));
-                } catch (NumberFormatException e) {
-                    lvl = 6;
-                }
-                if (finalLevel == null || lvl > finalLevel) {
-                    String text = cursor.text().trim();
-                    if (!text.isEmpty()) parts.add("**" + text + "**");
-                }
-                cursor = cursor.nextElementSibling();
-                continue;
-            }
+        Set<String> seen = new HashSet<>();
+        List<SearchResult> top = new ArrayList<>();
 
-            if (!shouldIncludeNode(cursor)) {
-                cursor = cursor.nextElementSibling();
-                continue;
+        for (ScoredResult r : combined) {
+            String abs = r.url;
+            if (!seen.contains(abs)) {
+                seen.add(abs);
+                top.add(new SearchResult(r.title, abs, r.lang, r.menuValue));
             }
-
-            String txt = nodeToText(cursor, currentUrl);
-            if (txt != null && !txt.isEmpty()) parts.add(txt);
-            cursor = cursor.nextElementSibling();
-            if (String.join("\n\n", parts).length() > EMBED_DESC_LIMIT) break;
+            if (top.size() >= cap) break;
         }
+        return top;
+    }
 
-        Element scope = el.parent();
-        String image = extractFirstImage(doc, scope);
-        String title = !el.text().trim().isEmpty() ? el.text().trim() : fragmentId;
-        String normalizedTitle = normalizeId(title);
-        String pageTitleNorm = normalizeId(extractTitle(doc));
-
-        List<String> cleaned = new ArrayList<>();
-        Set<String> seenNorms = new HashSet<>();
-
-        for (String block : parts) {
-            String pt = block.trim();
-            if (pt.isEmpty()) continue;
-            String norm = normalizeId(pt);
-            // Drop exact duplicates of section or page title.
-            if (norm.equals(normalizedTitle) || norm.equals(pageTitleNorm)) continue;
-            // Drop near-duplicates.
-            if (cleaned.isEmpty()) {
-                if ((norm.startsWith(normalizedTitle) && pt.length() <= title.length() + 15) ||
-                        (norm.startsWith(pageTitleNorm) && pt.length() <= extractTitle(doc).length() + 15)) {
-                    continue;
-                }
-            }
-            if (seenNorms.contains(norm)) continue;
-            seenNorms.add(norm);
-            cleaned.add(pt);
+    /**
+     * Scores a single locale's index and returns its best hits, best first.
+     * URLs come from the links resolved when the index was loaded.
+     */
+    private static List<ScoredResult> scoreIndex(List<String> words, SearchIndex idx, String lang, int cap) {
+        List<String> terms = idx.analyze(words);
+        IndexLinks links = indexLinks(lang, idx);
+        // Deduplicated by resolved link, so entries pointing at the same page don't crowd out others.
+        SearchIndex.TopHits hits = idx.top(terms, links.urls(), cap);
+        // Few exact hits: retry with typo corrections of the unknown terms.
+        if (hits.size() < FUZZY_MIN_RESULTS) {
+            List<String> fuzzy = idx.expandFuzzy(terms);
+            if (!fuzzy.isEmpty()) hits = idx.top(terms, fuzzy, links.urls(), cap);
         }
-
-        String desc = truncateWithEllipsis(String.join("\n\n", cleaned));
-        return new SectionData(title, desc, image);
+        List<ScoredResult> results = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            int doc = hits.doc(i);
+            String title = idx.title(doc);
+            results.add(new ScoredResult(hits.score(i), title != null ? title : "Field Guide", links.urls()[doc], links.menuValues()[doc], lang));
+        }
+        return results;
     }
 
     /**
-     * Builds a simple table of contents from h2/h3 elements, excluding blacklisted ids.
+     * Suggests titles for the typed search query from the cached index.
+     * Never waits on the network; a locale that isn't loaded yet starts loading and suggests nothing.
      */
-    private static List<TocItem> buildToc(Document doc, String baseUrl, String pageTitle) {
-        List<TocItem> items = new ArrayList<>();
-        Elements headers = doc.select("h2[id], h3[id]");
+    public static List<String> suggestTitles(String typed, String lang, int limit) {
+        SearchIndex idx = cachedIndexOrLoad(lang);
+        return idx != null ? idx.suggestTitles(typed, limit) : Collections.emptyList();
+    }
 
-        for (Element el : headers) {
-            String id = el.attr("id");
-            String txt = el.text().trim();
-            if (id.isEmpty() || txt.isEmpty()) continue;
-            if (isBlacklistedFragment(id)) continue;
-            if (txt.equals(pageTitle)) continue;
-            String url = baseUrl + "#" + id;
-            items.add(new TocItem(txt, url));
-        }
+    /**
+     * Suggests page paths (as `/guide path` takes them) from the cached index. Never waits on the network.
+     */
+    public static List<String> suggestPaths(String typed, String lang, int limit) {
+        SearchIndex idx = cachedIndexOrLoad(lang);
+        if (idx == null) return Collections.emptyList();
+        return idx.suggestPaths(typed, limit * 2).stream()
+                .filter(p -> !isBlacklistedFragment(p))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
 
-        Set<String> seen = new HashSet<>();
-        List<TocItem> unique = new ArrayList<>();
-        for (TocItem it : items) {
-            String key = normalizeId(it.title) + "#" + it.url.substring(it.url.lastIndexOf('#') + 1);
-            if (seen.contains(key)) continue;
-            seen.add(key);
-            unique.add(it);
-            if (unique.size() >= 60) break;
+    private static SearchIndex cachedIndexOrLoad(String lang) {
+        String safeLang = Locales.LANGS.contains(lang) ? lang : Locales.DEFAULT_LANG;
+        CachedIndex cache = cachedIndexByLang.get(safeLang);
+        if (cache == null) {
+            loadSearchIndex(safeLang, null);
+            return null;
         }
-        return unique;
+        if ((System.currentTimeMillis() - cache.timestamp) >= INDEX_TTL_MS) refreshIndexInBackground(safeLang, null);
+        return cache.index;
     }
 
     /**
-     * Builds a Discord embed for a full page or a specific section if a fragment is provided.
-     * * Fragment sections dont work well yet.
+     * Try JSON index first then fallback to BFS search.
      */
-    public static MessageEmbed fetchGuideEmbed(String urlOrPath, String lang) throws IOException, InterruptedException {
-        String[] parsed = parsePathAndFragment(urlOrPath, lang);
-        String baseUrl = parsed[0];
-        String fragment = parsed[1];
-
-        Document doc = fetchHtml(baseUrl);
-        String title = extractTitle(doc);
-        String description = fragment != null ? null : extractSummaryIntro(doc, title, baseUrl);
-        String image = extractFirstImage(doc);
+    public static List<SearchResult> searchGuideFast(String query, String selectedLang, int limit) {
+        return searchGuideFast(query, selectedLang, limit, false);
+    }
+
+    /**
+     * Blocking form of {@link #searchAsync(String, String, int, boolean)}.
+     * @return Results, best first, or an empty list on failure. The list is shared and must not be modified.
+     */
+    public static List<SearchResult> searchGuideFast(String query, String selectedLang, int limit, boolean crossLocale) {
+        try {
+            return searchAsync(query, selectedLang, limit, crossLocale).join();
+        } catch (Exception ignored) {}
+        return Collections.emptyList();
+    }
+
+    /**
+     * Searches the index without blocking the caller, answering repeated searches from a cache of recent results.
+     * Queries that tokenize the same share an entry; results are dropped once any index is refreshed.
+     * Indexes load on their own executor and scoring runs on the search executor.
+     * @return Future of the results, best first. The list is shared and must not be modified.
+     */
+    public static CompletableFuture<List<SearchResult>> searchAsync(String query, String selectedLang, int limit, boolean crossLocale) {
+        return searchAsync(query, selectedLang, null, limit, crossLocale);
+    }
+
+    /**
+     * Same as {@link #searchAsync(String, String, int, boolean)}, against another index URL.
+     * @param searchIndexUrl Index URL used for every searched locale instead of the default, null for the default.
+     *                       A locale keeps one index at a time, so switching URLs reloads it.
+     */
+    public static CompletableFuture<List<SearchResult>> searchAsync(String query, String selectedLang, String searchIndexUrl, int limit, boolean crossLocale) {
+        String effectiveLang = Locales.LANGS.contains(selectedLang) ? selectedLang : Locales.DEFAULT_LANG;
+        List<String> terms = tokenize(query);
+        int cap = Math.max(1, Math.min(limit, 500));
+        QueryKey key = new QueryKey(terms, effectiveLang, buildSearchIndexUrlForLang(effectiveLang, searchIndexUrl), crossLocale, cap);
+        long generation = indexGeneration.get();
+        CachedQuery cached = cachedQueries.get(key);
+        if (cached != null && cached.generation() == generation) {
+            queryCacheHits.incrementAndGet();
+            // Repeated queries never reach indexAsync, so stale indexes are refreshed from here too.
+            for (String lang : searchLangs(effectiveLang, crossLocale)) refreshIfStale(lang, searchIndexUrl);
+            return CompletableFuture.completedFuture(cached.results());
+        }
+        queryCacheMisses.incrementAndGet();
+        if (terms.isEmpty()) return CompletableFuture.completedFuture(Collections.emptyList());
+
+        List<CompletableFuture<List<ScoredResult>>> futures = new ArrayList<>();
+        for (String lang : searchLangs(effectiveLang, crossLocale)) {
+            futures.add(indexAsync(lang, searchIndexUrl)
+                    .thenApplyAsync(idx -> scoreIndex(terms, idx, lang, cap), searchExecutor)
+                    // A locale that fails to load yields no hits.
+                    .exceptionally(e -> Collections.emptyList()));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<List<ScoredResult>> perLocale = new ArrayList<>();
+            for (CompletableFuture<List<ScoredResult>> f : futures) perLocale.add(f.join());
+            List<SearchResult> results = Collections.unmodifiableList(mergeResults(perLocale, crossLocale, cap));
+            // Empty results are cached too, unless they're only empty because an index failed to load.
+            if (!results.isEmpty() || indexesLoaded(effectiveLang, crossLocale)) {
+                cachedQueries.put(key, new CachedQuery(generation, results));
+            }
+            return results;
+        });
+    }
+
+    /**
+     * The cached index of a locale, or the download that will produce it. Stale indexes refresh in the background.
+     * An index cached from a different URL than the one asked for counts as a miss.
+     */
+    private static CompletableFuture<SearchIndex> indexAsync(String lang, String override) {
+        CachedIndex cache = cachedIndexByLang.get(lang);
+        if (cache == null || !cache.url.equals(buildSearchIndexUrlForLang(lang, override))) return loadSearchIndex(lang, override);
+        if ((System.currentTimeMillis() - cache.timestamp) >= INDEX_TTL_MS) refreshIndexInBackground(lang, override);
+        return CompletableFuture.completedFuture(cache.index);
+    }
+
+    /**
+     * Refreshes a locale's index in the background if the cached one, loaded from the same URL, is past its TTL.
+     */
+    private static void refreshIfStale(String lang, String override) {
+        CachedIndex cache = cachedIndexByLang.get(lang);
+        if (cache == null || !cache.url.equals(buildSearchIndexUrlForLang(lang, override))) return;
+        if ((System.currentTimeMillis() - cache.timestamp) >= INDEX_TTL_MS) refreshIndexInBackground(lang, override);
+    }
+
+    private static boolean indexesLoaded(String lang, boolean crossLocale) {
+        if (!crossLocale) return cachedIndexByLang.containsKey(lang);
+        for (String l : Locales.LANGS) {
+            if (!cachedIndexByLang.containsKey(l)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * In DEV_MODE, periodically logs how many upstream requests were coalesced into one already in flight
+     * and how many searches the query cache answered since startup, plus the guide response bytes received
+     * against their decompressed size.
+     */
+    public static void startStatsLog() {
+        if (!Main.DEV_MODE) return;
+        indexRefresher.scheduleAtFixedRate(Scraper::logStats, STATS_LOG_INTERVAL_MS, STATS_LOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void logStats() {
+        logger.info("[Scraper] coalesced {} upstream requests, query cache {} hits / {} misses, {} bytes on the wire for {} decoded",
+                pageFlights.saved() + indexFlights.saved(), queryCacheHits.get(), queryCacheMisses.get(),
+                wireBytes.get(), decodedBytes.get());
+    }
+
+    /**
+     * Fetches a page and splits it into a {@link PageModel}, without blocking the caller.
+     * The request is sent with sendAsync and the page is parsed on the render executor.
+     * Models are kept with their validators; a 304 returns the cached model without parsing.
+     * Concurrent fetches of the same page share one request.
+     * @param remember False to leave the page cache as it is.
+     */
+    private static CompletableFuture<PageModel> fetchPageAsync(String url, boolean remember) {
+        return pageFlights.run(url, () -> downloadPageAsync(url, cachedPages.get(url), false)).thenApply(fetched -> {
+            // Only pages with validators are worth keeping, there would be nothing to revalidate them with.
+            if (remember && (fetched.etag != null || fetched.lastModified != null)) cachedPages.put(url, fetched);
+            return fetched.page;
+        });
+    }
+
+    /**
+     * Sends the actual request, revalidating the given copy if there is one.
+     * @param cached Copy whose validators are sent. Its page may be null when only the validators are known.
+     * @param background Wait for a low-priority upstream permit, for the pre-renderer.
+     * @return The cached entry itself on a 304, otherwise a new one whose validators are only set for a 200.
+     */
+    private static CompletableFuture<CachedPage> downloadPageAsync(String url, CachedPage cached, boolean background) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .header("Accept-Encoding", ACCEPT_ENCODING)
+                    .timeout(Duration.ofSeconds(15))
+                    .GET();
+            if (cached != null) addValidators(builder, cached.etag, cached.lastModified);
+            request = builder.build();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // The body is read while parsing, so the permit is held until the page is parsed.
+        return upstreamPermits.run(background, () -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> readPage(url, cached, response), renderExecutor));
+    }
+
+    private static CachedPage readPage(String url, CachedPage cached, HttpResponse<InputStream> response) {
+        try (InputStream body = decodedBody(response)) {
+            if (response.statusCode() == 304 && cached != null) return cached;
+
+            PageModel page = parsePage(body, charsetOf(response), url);
+            if (response.statusCode() != 200) return new CachedPage(page, null, null);
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            return new CachedPage(page, etag, lastModified);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Parses a page straight from the response stream and drops its scripts and styles before it is modeled.
+     * Everything else stays: fragments, table of contents and section images are resolved on the whole page.
+     */
+    private static PageModel parsePage(InputStream body, String charset, String url) throws IOException {
+        Document doc = Jsoup.parse(body, charset, url);
+        doc.select(PRUNED_SELECTOR).remove();
+        return new PageModel(doc, url);
+    }
+
+    /**
+     * Charset named in the Content-Type header, or null to let Jsoup detect it (UTF-8 by default).
+     */
+    private static String charsetOf(HttpResponse<?> response) {
+        String type = response.headers().firstValue("Content-Type").orElse("");
+        Matcher m = CHARSET_RE.matcher(type);
+        return m.find() ? m.group(1) : null;
+    }
+
+    /**
+     * Waits for a future, rethrowing its failure as the exceptions the blocking API declares.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Extracts the first image src.
+     */
+    private static String extractFirstImage(Document doc, Element root) {
+        Element scope = root != null ? root : doc.body();
+        Element img = scope.selectFirst("img");
+        if (img == null) return null;
+        String src = img.attr("src");
+        if (src == null || src.isEmpty()) return null;
+        if (src.startsWith("http")) return src;
+        try {
+            return new URL(new URL(BASE), src).toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String extractFirstImage(Document doc) {
+        return extractFirstImage(doc, null);
+    }
+
+    /**
+     * Extracts a title from the page (prefers h1/h2).
+     */
+    private static String extractTitle(Document doc) {
+        Element h1 = doc.selectFirst("h1");
+        if (h1 != null && !h1.text().trim().isEmpty()) return h1.text().trim();
+        Element h2 = doc.selectFirst("h2");
+        if (h2 != null && !h2.text().trim().isEmpty()) return h2.text().trim();
+        String title = doc.title().trim();
+        return !title.isEmpty() ? title : "Field Guide";
+    }
+
+    /**
+     * Returns a page's localized title and URL.
+     * Blocking form of {@link #fetchPageTitlesAsync(List, String)} for a single page.
+     */
+    public static SearchResult fetchPageTitle(String urlOrPath, String lang) {
+        return fetchPageTitlesAsync(List.of(urlOrPath), lang).join().get(0);
+    }
+
+    /**
+     * Looks up the localized titles of several pages at once, e.g. for the /guide top menu.
+     * Titles come from the locale's index; only pages it doesn't list are fetched, all in parallel,
+     * and those titles are kept and refreshed in the background once older than {@value #FETCHED_TITLE_TTL_MS} ms.
+     * @return Future of one result per page in the given order, completed right away when every title is known.
+     */
+    public static CompletableFuture<List<SearchResult>> fetchPageTitlesAsync(List<String> urlsOrPaths, String lang) {
+        // Keeps the title table as fresh as the index without waiting on it.
+        CachedIndex index = cachedIndexByLang.get(lang);
+        if (index == null || (System.currentTimeMillis() - index.timestamp) >= INDEX_TTL_MS) refreshIndexInBackground(lang, null);
+
+        Map<String, String> titles = indexTitlesByLang.getOrDefault(lang, Map.of());
+        List<CompletableFuture<SearchResult>> results = new ArrayList<>();
+        for (String urlOrPath : urlsOrPaths) {
+            String baseUrl = parsePathAndFragment(urlOrPath, lang)[0];
+            String title = titles.get(baseUrl);
+            results.add(title != null ? CompletableFuture.completedFuture(new SearchResult(title, baseUrl)) : fetchedTitleAsync(baseUrl));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> results.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    private static CompletableFuture<SearchResult> fetchedTitleAsync(String baseUrl) {
+        FetchedTitle cached = fetchedTitles.get(baseUrl);
+        if (cached == null) return fetchTitleAsync(baseUrl);
+        if (System.currentTimeMillis() - cached.fetchedAt() >= FETCHED_TITLE_TTL_MS) fetchTitleAsync(baseUrl);
+        return CompletableFuture.completedFuture(new SearchResult(cached.title(), baseUrl));
+    }
+
+    /**
+     * Fetches a page for its title. Failures fall back to a generic title and aren't remembered.
+     */
+    private static CompletableFuture<SearchResult> fetchTitleAsync(String baseUrl) {
+        return fetchPageAsync(baseUrl, true)
+                .thenApply(page -> {
+                    String title = !page.title.isEmpty() ? page.title : "Field Guide";
+                    fetchedTitles.put(baseUrl, new FetchedTitle(title, System.currentTimeMillis()));
+                    return new SearchResult(title, baseUrl);
+                })
+                .exceptionally(e -> {
+                    if (Main.DEV_MODE) logger.warn("[Scraper] failed to fetch title of {}:", baseUrl, e);
+                    return new SearchResult("Field Guide", baseUrl);
+                });
+    }
+
+    /**
+     * Builds a Discord embed for a full page or a specific section if a fragment is provided.
+     * Blocking form of {@link #fetchGuideEmbedAsync(String, String)}.
+     * * Fragment sections dont work well yet.
+     */
+    public static MessageEmbed fetchGuideEmbed(String urlOrPath, String lang) throws IOException, InterruptedException {
+        return await(fetchGuideEmbedAsync(urlOrPath, lang));
+    }
+
+    /**
+     * Builds a Discord embed for a full page or a specific section without blocking the caller.
+     * Rendered embeds are reused for {@value #EMBED_TTL_MS} ms, so repeat views skip the network and parsing.
+     * @return Future of the embed, completed on the render executor unless it was cached.
+     */
+    public static CompletableFuture<MessageEmbed> fetchGuideEmbedAsync(String urlOrPath, String lang) {
+        String[] parsed = parsePathAndFragment(urlOrPath, lang);
+        EmbedKey key = new EmbedKey(parsed[0], parsed[1], lang);
+        long now = System.currentTimeMillis();
+        CachedEmbed cached = cachedEmbeds.get(key);
+        if (cached != null && now < cached.expiresAt()) return CompletableFuture.completedFuture(cached.embed());
+        PrerenderedIndex crawl = prerenderedByLang.get(lang);
+        PrerenderedPage prerendered = crawl != null ? crawl.pages.get(parsed[0]) : null;
+        MessageEmbed prerenderedEmbed = prerendered != null ? prerendered.embeds.get(parsed[1]) : null;
+        if (prerenderedEmbed != null) {
+            if (now < prerendered.expiresAt) return CompletableFuture.completedFuture(prerenderedEmbed);
+            if (prerendered.etag != null || prerendered.lastModified != null) {
+                return revalidatePrerendered(key, crawl, prerendered, prerenderedEmbed);
+            }
+        }
+
+        return fetchPageAsync(parsed[0], true)
+                .thenApply(page -> renderEmbed(page, parsed[1]))
+                .whenComplete((embed, error) -> {
+                    if (embed != null) cachedEmbeds.put(key, new CachedEmbed(embed, now + EMBED_TTL_MS));
+                });
+    }
+
+    /**
+     * Checks an expired pre-rendered page against the guide with the validators it was rendered from.
+     * A 304 serves it for another {@value #EMBED_TTL_MS} ms; a changed page is rendered like any other
+     * fetch and its pre-rendered embeds are dropped.
+     */
+    private static CompletableFuture<MessageEmbed> revalidatePrerendered(EmbedKey key, PrerenderedIndex crawl, PrerenderedPage prerendered, MessageEmbed embed) {
+        String baseUrl = key.baseUrl();
+        CachedPage validators = new CachedPage(null, prerendered.etag, prerendered.lastModified);
+        return revalidationFlights.run(baseUrl, () -> downloadPageAsync(baseUrl, validators, false)).thenApply(fetched -> {
+            long now = System.currentTimeMillis();
+            if (fetched.page == null) {
+                prerendered.expiresAt = now + EMBED_TTL_MS;
+                return embed;
+            }
+            crawl.pages.remove(baseUrl, prerendered);
+            if (fetched.etag != null || fetched.lastModified != null) cachedPages.put(baseUrl, fetched);
+            MessageEmbed fresh = renderEmbed(fetched.page, key.fragment());
+            cachedEmbeds.put(key, new CachedEmbed(fresh, now + EMBED_TTL_MS));
+            return fresh;
+        });
+    }
+
+    private static MessageEmbed renderEmbed(PageModel page, String fragment) {
+        String baseUrl = page.baseUrl;
+        String title = page.title;
+        String description = fragment != null ? null : page.summary;
+        String image = page.image;
 
         if (fragment != null) {
-            SectionData sect = extractSection(doc, fragment, baseUrl);
+            SectionData sect = page.section(fragment);
             if (sect != null) {
                 EmbedBuilder embed = new EmbedBuilder()
                         .setTitle(sect.title + " — " + title, baseUrl + "#" + fragment)
@@ -768,8 +1472,7 @@ public class Scraper {
             }
         }
 
-        List<TocItem> toc = buildToc(doc, baseUrl, title);
-        List<String> tocLines = toc.stream()
+        List<String> tocLines = page.toc.stream()
                 .map(it -> "- [" + it.title + "](" + it.url + ")")
                 .collect(Collectors.toList());
 
@@ -806,45 +1509,768 @@ public class Scraper {
 
     // Helper classes
     private static class CachedIndex {
-        List<SearchIndexEntry> data;
+        SearchIndex index;
+        // Index URL it was downloaded from.
+        String url;
         long timestamp;
+        // HTTP validators of the response the index was built from, null if the server sent none.
+        String etag;
+        String lastModified;
 
-        CachedIndex(List<SearchIndexEntry> data, long timestamp) {
-            this.data = data;
+        CachedIndex(SearchIndex index, String url, long timestamp, String etag, String lastModified) {
+            this.index = index;
+            this.url = url;
             this.timestamp = timestamp;
+            this.etag = etag;
+            this.lastModified = lastModified;
         }
     }
 
-    public static class SearchIndexEntry {
-        public String entry;
-        public String content;
-        public String url;
+    /**
+     * Embeds of one crawl, at most {@value #PRERENDER_MAX_PAGES} pages, least recently viewed evicted first.
+     */
+    private static class PrerenderedIndex {
+        final SearchIndex index;
+        final Map<String, PrerenderedPage> pages = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PrerenderedPage> eldest) {
+                return size() > PRERENDER_MAX_PAGES;
+            }
+        });
+
+        PrerenderedIndex(SearchIndex index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * A page's pre-rendered embeds keyed by fragment (null for the page), served until they expire like
+     * cached embeds and then revalidated with the validators of the response they were rendered from.
+     */
+    private static class PrerenderedPage {
+        final Map<String, MessageEmbed> embeds;
+        final String etag;
+        final String lastModified;
+        volatile long expiresAt;
+
+        PrerenderedPage(Map<String, MessageEmbed> embeds, String etag, String lastModified) {
+            this.embeds = embeds;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = System.currentTimeMillis() + EMBED_TTL_MS;
+        }
+    }
+
+    private static class CachedPage {
+        PageModel page;
+        String etag;
+        String lastModified;
+
+        CachedPage(PageModel page, String etag, String lastModified) {
+            this.page = page;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * String-index versions of {@link #ensureLang}, {@link #canonicalLangHtml} and link resolution for plain
+     * http(s) URLs, each result built in one reused builder instead of a chain of java.net.URL objects.
+     * Anything outside that shape (user info, unusual characters, dot segments above the root...) gives null,
+     * and callers fall back to the URL-based versions, so the output is always the same as theirs.
+     */
+    private static final class LinkCanonicalizer {
+        private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+        private static final String PLAIN_PUNCTUATION = "-._~%!$&'()*+,;=:@/?#";
+
+        private LinkCanonicalizer() {}
+
+        /**
+         * Same as {@link #resolveLinkByUrl}, or null if the page or href needs it.
+         */
+        static String resolveLink(String base, String href) {
+            if (href == null || href.isEmpty()) return "";
+            int basePath = pathStart(base);
+            if (basePath < 0 || base.indexOf('?') >= 0 || base.indexOf('#') >= 0) return null;
+            String lang = pageLang(base, basePath);
+
+            if (href.charAt(0) == '#') {
+                if (!isPlain(href, 0)) return null;
+                StringBuilder sb = builder();
+                if (!appendLangPath(sb, base, basePath, base.length(), lang)) return base + href;
+                return sb.append(href).toString();
+            }
+            if (href.startsWith("http://") || href.startsWith("https://")) return canonicalLangHtml(href, lang);
+            String resolved = resolve(base, basePath, href);
+            return resolved != null ? canonicalLangHtml(resolved, lang) : null;
+        }
+
+        static String ensureLang(String url, String lang) {
+            int p = pathStart(url);
+            // A null locale makes the URL-based version bail out early, leave that to it.
+            if (p < 0 || lang == null) return null;
+            int end = pathEnd(url, p);
+            StringBuilder sb = builder();
+            if (!appendLangPath(sb, url, p, end, safeLang(lang))) return url;
+            return sb.append(url, end, url.length()).toString();
+        }
+
+        static String canonicalLangHtml(String url, String lang) {
+            int p = pathStart(url);
+            if (p < 0 || lang == null) return null;
+            int end = pathEnd(url, p);
+            StringBuilder sb = builder();
+            if (!appendLangPath(sb, url, p, end, safeLang(lang))) sb.append(url, 0, end);
+
+            // Same test as splitting the path: the last non-empty segment, "" if there is none.
+            int trimmed = sb.length();
+            while (trimmed > p && sb.charAt(trimmed - 1) == '/') trimmed--;
+            int lastStart = trimmed > p ? sb.lastIndexOf("/", trimmed - 1) + 1 : trimmed;
+            int dot = sb.indexOf(".", lastStart);
+            if (dot < 0 || dot >= trimmed) {
+                if (sb.length() == p || sb.charAt(sb.length() - 1) != '/') sb.append('/');
+                sb.append("index.html");
+            }
+            // The query stays, the fragment goes.
+            if (end < url.length() && url.charAt(end) == '?') {
+                int hash = url.indexOf('#', end);
+                sb.append(url, end, hash >= 0 ? hash : url.length());
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Appends the URL up to the end of its path with the locale segment set, like splitting, editing
+         * and joining the path does: trailing slashes are dropped.
+         * @return False if the path has no guide root, the URL is then left as it is.
+         */
+        private static boolean appendLangPath(StringBuilder sb, String url, int p, int end, String lang) {
+            int trimmed = end;
+            while (trimmed > p && url.charAt(trimmed - 1) == '/') trimmed--;
+            int rootEnd = -1;
+            for (int start = p; ; ) {
+                int slash = segmentEnd(url, start, trimmed);
+                if (isRoot(url, start, slash)) {
+                    rootEnd = slash;
+                    break;
+                }
+                if (slash >= trimmed) break;
+                start = slash + 1;
+            }
+            if (rootEnd < 0) return false;
+
+            if (rootEnd == trimmed) {
+                sb.append(url, 0, trimmed).append('/').append(lang);
+            } else {
+                int next = rootEnd + 1;
+                int nextEnd = segmentEnd(url, next, trimmed);
+                sb.append(url, 0, next).append(lang);
+                if (isLang(url, next, nextEnd)) {
+                    sb.append(url, nextEnd, trimmed);
+                } else {
+                    sb.append('/').append(url, next, trimmed);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Resolves a relative href against the page like {@code new URL(base, href)} does.
+         */
+        private static String resolve(String base, int basePath, String href) {
+            if (!isPlain(href, 0) || href.indexOf(':') >= 0 || href.indexOf('?') >= 0 || href.startsWith("//")) return null;
+            int hash = href.indexOf('#');
+            int hrefEnd = hash >= 0 ? hash : href.length();
+            StringBuilder sb = builder();
+            sb.append(base, 0, basePath);
+            if (href.charAt(0) == '/') {
+                // URL doesn't touch dot segments in absolute paths either.
+                sb.append(href, 0, hrefEnd);
+            } else {
+                if (basePath == base.length()) return null;
+                sb.append(base, basePath, base.lastIndexOf('/') + 1).append(href, 0, hrefEnd);
+                if (!removeDotSegments(sb, basePath)) return null;
+            }
+            return sb.append(href, hrefEnd, href.length()).toString();
+        }
+
+        /**
+         * Drops "." and ".." segments from the path starting at {@code root}, in place.
+         * @return False for paths URL treats differently: empty segments, ".." above the root, or segments like "..x".
+         */
+        private static boolean removeDotSegments(StringBuilder sb, int root) {
+            int len = sb.length();
+            int w = root + 1;
+            int depth = 0;
+            for (int r = root + 1; r <= len; ) {
+                int segEnd = sb.indexOf("/", r);
+                if (segEnd < 0) segEnd = len;
+                int segLen = segEnd - r;
+                boolean last = segEnd == len;
+                if (segLen == 0) {
+                    if (!last) return false;
+                } else if (segLen == 1 && sb.charAt(r) == '.') {
+                    // Skipped, the directory stays.
+                } else if (segLen == 2 && sb.charAt(r) == '.' && sb.charAt(r + 1) == '.') {
+                    if (depth == 0) return false;
+                    w = sb.lastIndexOf("/", w - 2) + 1;
+                    depth--;
+                } else {
+                    if (segLen > 2 && sb.charAt(r) == '.' && sb.charAt(r + 1) == '.') return false;
+                    for (int i = r; i < segEnd; i++) sb.setCharAt(w++, sb.charAt(i));
+                    if (!last) sb.setCharAt(w++, '/');
+                    depth++;
+                }
+                r = segEnd + 1;
+            }
+            sb.setLength(w);
+            return true;
+        }
+
+        /**
+         * Locale segment after the guide root of a page URL, the default locale if there is none.
+         */
+        private static String pageLang(String url, int p) {
+            int end = pathEnd(url, p);
+            for (int start = p; ; ) {
+                int slash = segmentEnd(url, start, end);
+                if (isRoot(url, start, slash)) {
+                    if (slash >= end) return Locales.DEFAULT_LANG;
+                    int nextEnd = segmentEnd(url, slash + 1, end);
+                    for (String lang : Locales.LANGS) {
+                        if (nextEnd - slash - 1 == lang.length() && url.startsWith(lang, slash + 1)) return lang;
+                    }
+                    return Locales.DEFAULT_LANG;
+                }
+                if (slash >= end) return Locales.DEFAULT_LANG;
+                start = slash + 1;
+            }
+        }
+
+        /**
+         * Index where the path of a plain http(s) URL starts, or -1 if the URL needs the full parser.
+         */
+        private static int pathStart(String url) {
+            if (url == null) return -1;
+            int i;
+            if (url.startsWith("https://")) i = 8;
+            else if (url.startsWith("http://")) i = 7;
+            else return -1;
+
+            int hostStart = i;
+            while (i < url.length() && isHostChar(url.charAt(i))) i++;
+            if (i == hostStart) return -1;
+            if (i < url.length() && url.charAt(i) == ':') {
+                int portStart = ++i;
+                int port = 0;
+                while (i < url.length() && i - portStart < 5 && url.charAt(i) >= '0' && url.charAt(i) <= '9') {
+                    port = port * 10 + (url.charAt(i++) - '0');
+                }
+                // URL rewrites empty ports and leading zeros when it rebuilds the authority.
+                if (i == portStart || url.charAt(portStart) == '0' || port > 65535) return -1;
+            }
+            if (i < url.length() && url.charAt(i) != '/' && url.charAt(i) != '?' && url.charAt(i) != '#') return -1;
+            return isPlain(url, i) ? i : -1;
+        }
+
+        /** End of the path: the query, the fragment or the end of the URL. */
+        private static int pathEnd(String url, int p) {
+            int hash = url.indexOf('#', p);
+            int query = url.indexOf('?', p);
+            if (query >= 0 && (hash < 0 || query < hash)) return query;
+            return hash >= 0 ? hash : url.length();
+        }
+
+        private static int segmentEnd(String url, int start, int end) {
+            int slash = url.indexOf('/', start);
+            return slash < 0 || slash > end ? end : slash;
+        }
+
+        private static boolean isRoot(String url, int start, int end) {
+            int len = end - start;
+            return (len == 18 && url.startsWith("Field-Guide-Modern", start)) || (len == 11 && url.startsWith("Field-Guide", start));
+        }
+
+        private static boolean isLang(String url, int start, int end) {
+            for (String lang : Locales.LANGS) {
+                if (end - start == lang.length() && url.startsWith(lang, start)) return true;
+            }
+            return false;
+        }
+
+        private static boolean isHostChar(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-';
+        }
+
+        private static boolean isPlain(String s, int from) {
+            for (int i = from; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) continue;
+                if (PLAIN_PUNCTUATION.indexOf(c) < 0) return false;
+            }
+            return true;
+        }
+
+        private static String safeLang(String lang) {
+            return Locales.LANGS.contains(lang) ? lang : Locales.DEFAULT_LANG;
+        }
+
+        private static StringBuilder builder() {
+            StringBuilder sb = BUILDER.get();
+            sb.setLength(0);
+            return sb;
+        }
+    }
+
+    /**
+     * Adds every byte read through it to a counter.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) counter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) counter.addAndGet(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) counter.addAndGet(skipped);
+            return skipped;
+        }
+
+        // A reset would count the same bytes twice.
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Semaphore whose waiters get a future instead of blocking a thread.
+     */
+    private static class AsyncSemaphore {
+        private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        // Low-priority waiters, only handed a permit when no regular waiter is queued.
+        private final ArrayDeque<CompletableFuture<Void>> backgroundWaiters = new ArrayDeque<>();
+        private int permits;
+
+        AsyncSemaphore(int permits) {
+            this.permits = permits;
+        }
+
+        synchronized CompletableFuture<Void> acquire(boolean background) {
+            if (permits > 0) {
+                permits--;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            (background ? backgroundWaiters : waiters).add(waiter);
+            return waiter;
+        }
+
+        void release() {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) next = backgroundWaiters.poll();
+                if (next == null) {
+                    permits++;
+                    return;
+                }
+            }
+            // Handed straight to the next waiter, outside the lock since it runs their continuation.
+            next.complete(null);
+        }
+
+        /**
+         * Starts the call once a permit is free and releases the permit when its future completes.
+         */
+        <T> CompletableFuture<T> run(Supplier<CompletableFuture<T>> call) {
+            return run(false, call);
+        }
+
+        /**
+         * @param background Queue behind every regular caller for the permit.
+         */
+        <T> CompletableFuture<T> run(boolean background, Supplier<CompletableFuture<T>> call) {
+            return acquire(background).thenCompose(ignored -> {
+                CompletableFuture<T> result;
+                try {
+                    result = call.get();
+                } catch (RuntimeException e) {
+                    result = CompletableFuture.failedFuture(e);
+                }
+                return result.whenComplete((value, error) -> release());
+            });
+        }
+    }
+
+    /**
+     * Coalesces concurrent calls with the same key into one call whose future they all share.
+     * The key is forgotten once the call completes, so later callers start a fresh one.
+     */
+    private static class SingleFlight<K, V> {
+        private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+        private final AtomicLong saved = new AtomicLong();
+
+        CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> call) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+            if (existing != null) {
+                saved.incrementAndGet();
+                return existing;
+            }
+
+            CompletableFuture<V> result;
+            try {
+                result = call.get();
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            result.whenComplete((value, error) -> {
+                // Removed before completing, so callers reacting to the result don't join a finished flight.
+                inFlight.remove(key, flight);
+                if (error != null) flight.completeExceptionally(error);
+                else flight.complete(value);
+            });
+            return flight;
+        }
+
+        /** Calls that joined an existing flight instead of starting their own. */
+        long saved() {
+            return saved.get();
+        }
+    }
+
+    /**
+     * Per entry of one index: canonical page URL, fragment (or null), full URL and select menu value.
+     * Arrays are indexed by doc id.
+     */
+    private record IndexLinks(SearchIndex index, String[] pages, String[] fragments, String[] urls, String[] menuValues) {
+        static IndexLinks of(String lang, SearchIndex idx) {
+            int n = idx.size();
+            String[] pages = new String[n];
+            String[] fragments = new String[n];
+            String[] urls = new String[n];
+            String[] menuValues = new String[n];
+            for (int doc = 0; doc < n; doc++) {
+                String[] parsed = parsePathAndFragment(idx.url(doc), lang);
+                pages[doc] = parsed[0];
+                fragments[doc] = parsed[1];
+                String url = parsed[1] != null ? parsed[0] + "#" + parsed[1] : parsed[0];
+                urls[doc] = url;
+                if (url != null) menuValues[doc] = url.startsWith(BASE) ? url.substring(BASE.length()) : url;
+            }
+            return new IndexLinks(idx, pages, fragments, urls, menuValues);
+        }
+    }
+
+    private record IndexFlightKey(String lang, String url) {}
+
+    private record IndexBackoff(int failures, long nextAttemptAt) {
+        static IndexBackoff after(int failures) {
+            long delay = Math.min(INDEX_RETRY_MAX_MS, INDEX_RETRY_BASE_MS << Math.min(failures - 1, 16));
+            return new IndexBackoff(failures, System.currentTimeMillis() + delay);
+        }
     }
 
     public static class SearchResult {
         public String title;
         public String url;
+        // Locale the result came from, null if unknown.
+        public String lang;
+        // Url relative to BASE, the value search select menus send back. Null if not resolved up front.
+        public String menuValue;
 
         public SearchResult(String title, String url) {
+            this(title, url, null);
+        }
+
+        public SearchResult(String title, String url, String lang) {
+            this(title, url, lang, null);
+        }
+
+        public SearchResult(String title, String url, String lang, String menuValue) {
             this.title = title;
             this.url = url;
+            this.lang = lang;
+            this.menuValue = menuValue;
         }
     }
 
+    private record EmbedKey(String baseUrl, String fragment, String lang) {}
+
+    private record CachedEmbed(MessageEmbed embed, long expiresAt) {}
+
+    private record FetchedTitle(String title, long fetchedAt) {}
+
+    private record LinkKey(String page, String href) {}
+
+    private record QueryKey(List<String> terms, String lang, String indexUrl, boolean crossLocale, int cap) {}
+
+    // Results tagged with the index generation they were computed from.
+    private record CachedQuery(long generation, List<SearchResult> results) {}
+
     private static class ScoredResult {
-        int score;
+        float score;
         String title;
         String url;
+        String menuValue;
         String lang;
 
-        ScoredResult(int score, String title, String url, String lang) {
+        ScoredResult(float score, String title, String url, String menuValue, String lang) {
             this.score = score;
             this.title = title;
             this.url = url;
+            this.menuValue = menuValue;
             this.lang = lang;
         }
     }
 
+    /**
+     * A parsed page split into everything the embeds need: title, first image, summary, table of contents
+     * and sections by fragment id. Built in one pass over the document; every content block is rendered
+     * at most once and shared by all sections containing it, so any fragment afterwards is a map lookup.
+     */
+    private static class PageModel {
+        // Tag level for elements that aren't headings.
+        private static final int NOT_HEADING = Integer.MIN_VALUE;
+
+        final String baseUrl;
+        final String title;
+        final String image;
+        final String summary;
+        final List<TocItem> toc;
+
+        private final Document doc;
+        private final String titleNorm;
+        // First element per id, like Document.getElementById.
+        private final Map<String, Element> byId = new HashMap<>();
+        // Child elements per parent and each element's position among them, for walking siblings by index.
+        private final Map<Element, Elements> childrenOf = new IdentityHashMap<>();
+        private final Map<Element, Integer> siblingIndex = new IdentityHashMap<>();
+        private final Map<Element, String> blockText = new IdentityHashMap<>();
+        private final Map<Element, String> scopeImage = new IdentityHashMap<>();
+        // Null values cache fragments that have no section.
+        private final Map<String, SectionData> sections = new HashMap<>();
+
+        PageModel(Document doc, String baseUrl) {
+            this.doc = doc;
+            this.baseUrl = baseUrl;
+            this.title = extractTitle(doc);
+            this.titleNorm = normalizeId(title);
+            this.image = extractFirstImage(doc);
+
+            List<Element> titleHeaders = new ArrayList<>();
+            List<Element> tocHeaders = new ArrayList<>();
+            List<String> headingIds = new ArrayList<>();
+            Element contentRoot = null;
+            for (Element el : doc.getAllElements()) {
+                String id = el.attr("id");
+                if (!id.isEmpty()) byId.putIfAbsent(id, el);
+                Elements children = el.children();
+                if (!children.isEmpty()) {
+                    childrenOf.put(el, children);
+                    for (int i = 0; i < children.size(); i++) siblingIndex.put(children.get(i), i);
+                }
+                if (contentRoot == null && el.hasClass("col-md-9")) contentRoot = el;
+                String tag = el.normalName();
+                if (tag.equals("h1") || tag.equals("h2") || tag.equals("h3")) titleHeaders.add(el);
+                if ((tag.equals("h2") || tag.equals("h3")) && el.hasAttr("id")) tocHeaders.add(el);
+                if (!id.isEmpty() && headingLevel(el) != NOT_HEADING) headingIds.add(id);
+            }
+
+            // Heading sections are what TOC links and search results point at, render them up front.
+            for (String id : headingIds) section(id);
+            this.summary = buildSummary(titleHeaders, contentRoot);
+            this.toc = buildToc(tocHeaders);
+        }
+
+        private static int headingLevel(Element el) {
+            String tag = el.tagName().toLowerCase();
+            if (!tag.startsWith("h")) return NOT_HEADING;
+            try {
+                return Integer.parseInt(tag.substring(1));
+            } catch (NumberFormatException e) {
+                return 6;
+            }
+        }
+
+        /**
+         * Section text and image for a fragment id.
+         * @return Null if the id is blacklisted or not on the page.
+         */
+        synchronized SectionData section(String fragmentId) {
+            if (fragmentId == null || fragmentId.isEmpty()) return null;
+            if (isBlacklistedFragment(fragmentId)) return null;
+            if (sections.containsKey(fragmentId)) return sections.get(fragmentId);
+            SectionData sect = buildSection(fragmentId);
+            sections.put(fragmentId, sect);
+            return sect;
+        }
+
+        /**
+         * Collects the anchor's following siblings until a heading of the same or a higher level.
+         */
+        private SectionData buildSection(String fragmentId) {
+            Element el = byId.get(fragmentId);
+            if (el == null) return null;
+            int level = headingLevel(el);
+            String sectionTitle = !el.text().trim().isEmpty() ? el.text().trim() : fragmentId;
+            String normalizedTitle = normalizeId(sectionTitle);
+
+            // Blocks are cleaned and appended as they are collected. The cut-off counts every block
+            // collected, kept or not, so which blocks get read doesn't depend on the cleaning.
+            StringBuilder desc = new StringBuilder();
+            Set<String> seenNorms = new HashSet<>();
+            int joinedLength = 0;
+            boolean collected = false;
+            Elements siblings = el.parent() != null ? childrenOf.get(el.parent()) : null;
+            // The content root itself has nothing of the content after it.
+            if (siblings != null && !el.hasClass("col-md-9")) {
+                for (int i = siblingIndex.get(el) + 1; i < siblings.size(); i++) {
+                    Element cursor = siblings.get(i);
+                    int lvl = headingLevel(cursor);
+                    if (lvl != NOT_HEADING && level != NOT_HEADING && lvl <= level) break;
+                    if (isBreadcrumb(cursor)) break;
+
+                    String txt;
+                    if (lvl != NOT_HEADING) {
+                        String text = cursor.text().trim();
+                        if (text.isEmpty()) continue;
+                        txt = "**" + text + "**";
+                    } else {
+                        if (!shouldIncludeNode(cursor)) continue;
+                        txt = blockText.computeIfAbsent(cursor, c -> nodeToText(c, baseUrl));
+                    }
+                    if (!txt.isEmpty()) {
+                        joinedLength += (collected ? 2 : 0) + txt.length();
+                        collected = true;
+                        appendCleaned(desc, txt, sectionTitle, normalizedTitle, seenNorms);
+                    }
+                    // Headings never end a section early, only content blocks do.
+                    if (lvl == NOT_HEADING && joinedLength > EMBED_DESC_LIMIT) break;
+                }
+            }
+
+            Element scope = el.parent();
+            if (!scopeImage.containsKey(scope)) scopeImage.put(scope, extractFirstImage(doc, scope));
+            String image = scopeImage.get(scope);
+            return new SectionData(sectionTitle, truncateWithEllipsis(desc), image);
+        }
+
+        /**
+         * Appends a section block to the description unless it repeats a title or an earlier block.
+         */
+        private void appendCleaned(StringBuilder desc, String block, String sectionTitle, String normalizedTitle, Set<String> seenNorms) {
+            String pt = block.trim();
+            if (pt.isEmpty()) return;
+            String norm = normalizeId(pt);
+            // Drop exact duplicates of section or page title.
+            if (norm.equals(normalizedTitle) || norm.equals(titleNorm)) return;
+            // Drop near-duplicates.
+            if (desc.length() == 0) {
+                if ((norm.startsWith(normalizedTitle) && pt.length() <= sectionTitle.length() + 15) ||
+                        (norm.startsWith(titleNorm) && pt.length() <= title.length() + 15)) {
+                    return;
+                }
+            }
+            if (!seenNorms.add(norm)) return;
+            if (desc.length() > 0) desc.append("\n\n");
+            desc.append(pt);
+        }
+
+        /**
+         * Short intro: the section under the heading matching the page title, else the first content blocks.
+         */
+        private String buildSummary(List<Element> titleHeaders, Element contentRoot) {
+            for (Element header : titleHeaders) {
+                if (header.text().trim().equals(title)) {
+                    String id = header.attr("id");
+                    if (!id.isEmpty() && !isBlacklistedFragment(id)) {
+                        SectionData sect = section(id);
+                        if (sect != null && sect.description != null && !sect.description.isEmpty()) {
+                            return sect.description;
+                        }
+                    }
+                    break;
+                }
+            }
+
+            Element scope = contentRoot != null ? contentRoot : doc.body();
+            StringBuilder text = new StringBuilder();
+
+            // Same order as select("p, ul, ol"), but the walk ends at the first block that doesn't fit.
+            NodeTraversor.filter(new NodeFilter() {
+                @Override
+                public FilterResult head(Node node, int depth) {
+                    if (!(node instanceof Element el)) return FilterResult.CONTINUE;
+                    String tag = el.normalName();
+                    if (!tag.equals("p") && !tag.equals("ul") && !tag.equals("ol")) return FilterResult.CONTINUE;
+                    String t = blockText.computeIfAbsent(el, c -> nodeToText(c, baseUrl));
+                    if (t == null || t.isEmpty()) return FilterResult.CONTINUE;
+                    if (STAT_PREFIX_RE.matcher(t).find()) return FilterResult.CONTINUE;
+                    int addLen = (text.length() == 0 ? 0 : 2) + t.length();
+                    if (text.length() + addLen > EMBED_DESC_LIMIT) return FilterResult.STOP;
+                    if (text.length() > 0) text.append("\n\n");
+                    text.append(t);
+                    return FilterResult.CONTINUE;
+                }
+
+                @Override
+                public FilterResult tail(Node node, int depth) {
+                    return FilterResult.CONTINUE;
+                }
+            }, scope);
+
+            return truncateWithEllipsis(text);
+        }
+
+        /**
+         * Builds a simple table of contents from h2/h3 elements, excluding blacklisted ids.
+         */
+        private List<TocItem> buildToc(List<Element> headers) {
+            List<TocItem> items = new ArrayList<>();
+
+            for (Element el : headers) {
+                String id = el.attr("id");
+                String txt = el.text().trim();
+                if (id.isEmpty() || txt.isEmpty()) continue;
+                if (isBlacklistedFragment(id)) continue;
+                if (txt.equals(title)) continue;
+                String url = baseUrl + "#" + id;
+                items.add(new TocItem(txt, url));
+            }
+
+            Set<String> seen = new HashSet<>();
+            List<TocItem> unique = new ArrayList<>();
+            for (TocItem it : items) {
+                String key = normalizeId(it.title) + "#" + it.url.substring(it.url.lastIndexOf('#') + 1);
+                if (seen.contains(key)) continue;
+                seen.add(key);
+                unique.add(it);
+                if (unique.size() >= 60) break;
+            }
+            return unique;
+        }
+    }
+
     private static class SectionData {
         String title;
         String description;
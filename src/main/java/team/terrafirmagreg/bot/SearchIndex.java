@@ -0,0 +1,967 @@
+package team.terrafirmagreg.bot;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * In-memory inverted index over one locale's search_index.json.
+ * Built once when the index is fetched so queries only walk posting lists.
+ */
+class SearchIndex {
+
+    // Posting payload: bit 0 title starts with the term, bits 1-8 title tf, bits 9-30 content tf.
+    private static final int PREFIX_BIT = 1;
+    private static final int TITLE_TF_SHIFT = 1;
+    private static final int TITLE_TF_MAX = 0xFF;
+    private static final int CONTENT_TF_SHIFT = 9;
+    private static final int CONTENT_TF_MAX = 0x3FFFFF;
+
+    // BM25F parameters. A title hit weighs twice a content hit, as the old 4/2 scoring did.
+    private static final float K1 = 1.2f;
+    private static final float TITLE_FIELD_WEIGHT = 2.0f;
+    private static final float CONTENT_FIELD_WEIGHT = 1.0f;
+    // Titles are short and similar in length, so they get less length normalization.
+    private static final float TITLE_B = 0.3f;
+    private static final float CONTENT_B = 0.75f;
+    /** Extra score, as a fraction of the term's idf, when the title starts with the term. */
+    private static final float PREFIX_BOOST = 0.25f;
+    /** Typo corrections score at this fraction of an exact match. */
+    private static final float FUZZY_BOOST = 0.5f;
+
+    /** Query terms shorter than this are never typo-corrected. */
+    private static final int FUZZY_MIN_TERM_LENGTH = 4;
+    /** Max query terms expanded per search. */
+    private static final int MAX_FUZZY_TERMS = 6;
+    /** Max vocabulary terms edit-distance checked per query term, bounds worst-case latency. */
+    private static final int MAX_FUZZY_CANDIDATES = 64;
+    /** Max corrections kept per query term. */
+    private static final int MAX_FUZZY_EXPANSIONS = 3;
+
+    /** Indexes with fewer entries than this are always scored on the calling thread. */
+    private static final int PARALLEL_MIN_ENTRIES = 4096;
+    /** Queries touching fewer postings than this are cheap enough to score sequentially. */
+    private static final int PARALLEL_MIN_POSTINGS = 20_000;
+    /** Smallest entry range a scoring task is split into. */
+    private static final int PARALLEL_MIN_CHUNK = 1024;
+
+    // Own pool so broad searches don't queue behind (or starve) anything on the common pool.
+    private static final ForkJoinPool SCORING_POOL = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors(),
+            pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("fg-score-" + t.getPoolIndex());
+                return t;
+            },
+            null, false);
+
+    private final Analyzer analyzer;
+    // Columnar entry storage, indexed by doc id. Content is only tokenized, never kept.
+    private final String[] titles;
+    private final String[] urls;
+    // term -> [doc0, payload0, doc1, payload1, ...] sorted by doc id. Document frequency is length / 2.
+    private final Map<String, int[]> postings;
+    // Term counts per field and the BM25 length normalization derived from them.
+    private final int[] titleLengths;
+    private final int[] contentLengths;
+    private final float[] titleNorms;
+    private final float[] contentNorms;
+    // Autocomplete lookups over distinct titles and page paths.
+    private final PrefixIndex titlePrefixes;
+    private final PrefixIndex pathPrefixes;
+    // Typo tolerance: every indexed term, and padded trigram -> ids of vocabulary terms containing it.
+    private final String[] vocab;
+    private final Map<String, int[]> vocabTrigrams;
+
+    private SearchIndex(Analyzer analyzer, String[] titles, String[] urls, Map<String, int[]> postings,
+                        int[] titleLengths, int[] contentLengths) {
+        this.analyzer = analyzer;
+        this.titles = titles;
+        this.urls = urls;
+        this.postings = postings;
+        this.titleLengths = titleLengths;
+        this.contentLengths = contentLengths;
+        this.titleNorms = lengthNorms(titleLengths, TITLE_B);
+        this.contentNorms = lengthNorms(contentLengths, CONTENT_B);
+        this.vocab = postings.keySet().toArray(new String[0]);
+        this.vocabTrigrams = buildTrigrams(vocab);
+        this.titlePrefixes = PrefixIndex.of(Arrays.asList(titles));
+        List<String> paths = new ArrayList<>(urls.length);
+        for (String url : urls) paths.add(pagePath(url));
+        this.pathPrefixes = PrefixIndex.of(paths);
+    }
+
+    /**
+     * Streams a search_index.json array straight into an index without materializing entry objects.
+     * @param reader Reader over the JSON body.
+     * @param intern Deduplicate repeated title/url strings.
+     * @param analyzer How the locale's text is split into terms.
+     * @return The built index.
+     */
+    static SearchIndex read(Reader reader, boolean intern, Analyzer analyzer) throws IOException {
+        Builder builder = new Builder(intern, analyzer);
+        JsonReader json = new JsonReader(reader);
+        // Gson.fromJson was lenient, keep accepting what it accepted.
+        json.setLenient(true);
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            String title = null;
+            String content = null;
+            String url = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "entry" -> title = nextStringOrNull(json);
+                    case "content" -> content = nextStringOrNull(json);
+                    case "url" -> url = nextStringOrNull(json);
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+            builder.add(title, content, url);
+        }
+        json.endArray();
+        return builder.build();
+    }
+
+    private static String nextStringOrNull(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextString();
+    }
+
+    /**
+     * Layout version of {@link #writeSnapshot(DataOutput)}. Bump it whenever the written fields
+     * or their meaning change, older snapshots are then ignored and rebuilt from the live index.
+     */
+    static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * Writes the entry columns, field lengths and postings. Everything else is derived on load.
+     */
+    void writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(analyzer.ordinal());
+        out.writeInt(titles.length);
+        for (int doc = 0; doc < titles.length; doc++) {
+            writeString(out, titles[doc]);
+            writeString(out, urls[doc]);
+            out.writeInt(titleLengths[doc]);
+            out.writeInt(contentLengths[doc]);
+        }
+        out.writeInt(postings.size());
+        for (Map.Entry<String, int[]> e : postings.entrySet()) {
+            writeString(out, e.getKey());
+            int[] list = e.getValue();
+            out.writeInt(list.length);
+            for (int v : list) out.writeInt(v);
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeSnapshot(DataOutput)}, e.g. from a memory-mapped file.
+     * Nothing is tokenized, only the derived lookup tables are rebuilt.
+     * Throws a runtime exception if the snapshot is truncated or corrupt. Every count is checked against
+     * the bytes left before anything is allocated, so a damaged file can't ask for huge arrays.
+     */
+    static SearchIndex readSnapshot(ByteBuffer in) {
+        int ordinal = in.getInt();
+        if (ordinal < 0 || ordinal >= Analyzer.values().length) throw new IllegalArgumentException("Bad analyzer " + ordinal);
+        Analyzer analyzer = Analyzer.values()[ordinal];
+        // Each entry is at least two string lengths and two field lengths.
+        int n = readCount(in, 4 * Integer.BYTES, "entry");
+        String[] titles = new String[n];
+        String[] urls = new String[n];
+        int[] titleLengths = new int[n];
+        int[] contentLengths = new int[n];
+        for (int doc = 0; doc < n; doc++) {
+            titles[doc] = readString(in);
+            urls[doc] = readString(in);
+            titleLengths[doc] = in.getInt();
+            contentLengths[doc] = in.getInt();
+        }
+        // Each term is at least a string length and a list length.
+        int terms = readCount(in, 2 * Integer.BYTES, "term");
+        Map<String, int[]> postings = new HashMap<>(terms * 2);
+        for (int t = 0; t < terms; t++) {
+            String term = readString(in);
+            int[] list = new int[readCount(in, Integer.BYTES, "posting")];
+            IntBuffer ints = in.asIntBuffer();
+            ints.get(list);
+            in.position(in.position() + list.length * Integer.BYTES);
+            postings.put(term, list);
+        }
+        return new SearchIndex(analyzer, titles, urls, postings, titleLengths, contentLengths);
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len == -1) return null;
+        if (len < 0 || len > in.remaining()) throw new IllegalArgumentException("Bad string length " + len);
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a count of items that take at least minBytes each, rejecting counts the remaining bytes can't hold.
+     */
+    private static int readCount(ByteBuffer in, int minBytes, String what) {
+        int count = in.getInt();
+        if (count < 0 || (long) count * minBytes > in.remaining()) throw new IllegalArgumentException("Bad " + what + " count " + count);
+        return count;
+    }
+
+    /**
+     * Accumulates entries one at a time into posting lists and title/url columns.
+     */
+    static class Builder {
+        private final Map<String, IntList> building = new HashMap<>();
+        // term -> {title tf, content tf, prefix} for the entry being added.
+        private final Map<String, int[]> statsByTerm = new HashMap<>();
+        private final IntList titleLengths = new IntList();
+        private final IntList contentLengths = new IntList();
+        private final Map<String, String> pool;
+        private final Analyzer analyzer;
+        private final List<String> titles = new ArrayList<>();
+        private final List<String> urls = new ArrayList<>();
+
+        Builder(boolean intern, Analyzer analyzer) {
+            this.pool = intern ? new HashMap<>() : null;
+            this.analyzer = analyzer;
+        }
+
+        void add(String title, String content, String url) {
+            int doc = titles.size();
+            titles.add(intern(title));
+            urls.add(intern(url));
+
+            statsByTerm.clear();
+            String t = title != null ? title : "";
+            List<String> titleWords = terms(t);
+            List<String> titleTerms = analyzer.expand(titleWords, true);
+            for (String term : titleTerms) statsByTerm.computeIfAbsent(term, k -> new int[3])[0]++;
+            // Title starts directly with a word, so that word's first term gets the prefix bonus,
+            // both as a query would produce it and as indexed (they differ for CJK).
+            if (!titleWords.isEmpty() && isWordChar(t.codePointAt(0))) {
+                List<String> first = List.of(titleWords.get(0));
+                statsByTerm.computeIfAbsent(analyzer.expand(first, true).get(0), k -> new int[3])[2] = 1;
+                statsByTerm.computeIfAbsent(analyzer.expand(first, false).get(0), k -> new int[3])[2] = 1;
+            }
+            List<String> contentTerms = analyzer.expand(terms(content), true);
+            for (String term : contentTerms) statsByTerm.computeIfAbsent(term, k -> new int[3])[1]++;
+            titleLengths.add(titleTerms.size());
+            contentLengths.add(contentTerms.size());
+
+            for (Map.Entry<String, int[]> e : statsByTerm.entrySet()) {
+                int[] stats = e.getValue();
+                IntList list = building.computeIfAbsent(e.getKey(), k -> new IntList());
+                list.add(doc);
+                list.add(payload(stats[0], stats[1], stats[2] != 0));
+            }
+        }
+
+        private String intern(String s) {
+            if (s == null || pool == null) return s;
+            String existing = pool.putIfAbsent(s, s);
+            return existing != null ? existing : s;
+        }
+
+        SearchIndex build() {
+            Map<String, int[]> postings = new HashMap<>(building.size() * 2);
+            for (Map.Entry<String, IntList> b : building.entrySet()) {
+                postings.put(b.getKey(), b.getValue().toArray());
+            }
+            return new SearchIndex(analyzer, titles.toArray(new String[0]), urls.toArray(new String[0]), postings,
+                    titleLengths.toArray(), contentLengths.toArray());
+        }
+    }
+
+    static int payload(int titleTf, int contentTf, boolean prefix) {
+        return (prefix ? PREFIX_BIT : 0)
+                | Math.min(titleTf, TITLE_TF_MAX) << TITLE_TF_SHIFT
+                | Math.min(contentTf, CONTENT_TF_MAX) << CONTENT_TF_SHIFT;
+    }
+
+    /**
+     * Per-entry BM25 length normalization, 1 / (1 - b + b * length / average length).
+     */
+    private static float[] lengthNorms(int[] lengths, float b) {
+        long total = 0;
+        for (int len : lengths) total += len;
+        float avg = lengths.length > 0 ? (float) total / lengths.length : 0f;
+        float[] norms = new float[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            norms[i] = avg > 0 ? 1f / (1f - b + b * lengths[i] / avg) : 1f;
+        }
+        return norms;
+    }
+
+    /**
+     * Splits words into index terms. Chinese and Japanese text has no spaces, so a whole
+     * sentence would be one word; those locales index overlapping character bigrams of CJK runs instead,
+     * plus single characters so one-character queries still match.
+     * The same analyzer runs over entries at build time and over query words at search time.
+     */
+    enum Analyzer {
+        STANDARD,
+        CJK_BIGRAM;
+
+        static Analyzer forLang(String lang) {
+            return switch (lang) {
+                case "zh_cn", "zh_hk", "zh_tw", "ja_jp" -> CJK_BIGRAM;
+                default -> STANDARD;
+            };
+        }
+
+        /**
+         * @param words Lowercase words, as from {@link #terms(String)}.
+         * @param indexing True when building the index, which also gets every single CJK character.
+         * @return Index terms.
+         */
+        List<String> expand(List<String> words, boolean indexing) {
+            if (this == STANDARD) return words;
+            List<String> out = new ArrayList<>(words.size() * 2);
+            for (String w : words) addCjkBigrams(w, indexing, out);
+            return out;
+        }
+
+        // "铜矿石ingot" -> "铜矿", "矿石", "ingot". A lone CJK character is kept as is.
+        private static void addCjkBigrams(String word, boolean unigrams, List<String> out) {
+            int i = 0;
+            while (i < word.length()) {
+                int start = i;
+                boolean cjk = isCjk(word.codePointAt(i));
+                while (i < word.length() && isCjk(word.codePointAt(i)) == cjk) i += Character.charCount(word.codePointAt(i));
+                if (!cjk) {
+                    out.add(word.substring(start, i));
+                    continue;
+                }
+                if (unigrams) {
+                    for (int c = start; c < i; c += Character.charCount(word.codePointAt(c))) {
+                        out.add(word.substring(c, c + Character.charCount(word.codePointAt(c))));
+                    }
+                }
+                int first = start;
+                int second = first + Character.charCount(word.codePointAt(first));
+                if (second >= i) {
+                    if (!unigrams) out.add(word.substring(first, i));
+                    continue;
+                }
+                while (second < i) {
+                    int end = second + Character.charCount(word.codePointAt(second));
+                    out.add(word.substring(first, end));
+                    first = second;
+                    second = end;
+                }
+            }
+        }
+    }
+
+    static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                // Katakana prolonged sound mark is script COMMON.
+                || cp == 0x30FC;
+    }
+
+    /**
+     * Splits text into lowercase words, where a word is a maximal run of letters/numbers.
+     * Matches the old standalone-term regex boundaries.
+     */
+    static List<String> terms(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null || text.isEmpty()) return out;
+        int start = -1;
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            if (isWordChar(cp)) {
+                if (start < 0) start = i;
+            } else if (start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            i += Character.charCount(cp);
+        }
+        if (start >= 0) out.add(text.substring(start).toLowerCase(Locale.ROOT));
+        return out;
+    }
+
+    /**
+     * Equivalent of [\p{L}\p{N}].
+     */
+    static boolean isWordChar(int cp) {
+        if (Character.isLetter(cp)) return true;
+        int type = Character.getType(cp);
+        return type == Character.DECIMAL_DIGIT_NUMBER
+                || type == Character.LETTER_NUMBER
+                || type == Character.OTHER_NUMBER;
+    }
+
+    /**
+     * Turns an index url into the form `/guide path` takes, e.g. "mechanics/anvils#anvil".
+     */
+    static String pagePath(String url) {
+        if (url == null || url.isEmpty()) return null;
+        String p = url;
+        if (p.startsWith("http://") || p.startsWith("https://")) {
+            int pathStart = p.indexOf('/', p.indexOf("//") + 2);
+            if (pathStart < 0) return null;
+            p = p.substring(pathStart);
+            for (String root : List.of("/Field-Guide-Modern/", "/Field-Guide/")) {
+                int r = p.indexOf(root);
+                if (r >= 0) {
+                    p = p.substring(r + root.length());
+                    break;
+                }
+            }
+            int slash = p.indexOf('/');
+            if (slash > 0 && Locales.LANGS.contains(p.substring(0, slash))) p = p.substring(slash + 1);
+        }
+        while (p.startsWith("/")) p = p.substring(1);
+        int hash = p.indexOf('#');
+        String page = hash >= 0 ? p.substring(0, hash) : p;
+        String frag = hash >= 0 ? p.substring(hash) : "";
+        if (page.endsWith(".html")) page = page.substring(0, page.length() - ".html".length());
+        String path = page + frag;
+        return path.isEmpty() ? null : path;
+    }
+
+    /**
+     * Titles with a word starting with the typed text, whole-title matches first.
+     */
+    List<String> suggestTitles(String typed, int limit) {
+        return titlePrefixes.lookup(typed, limit);
+    }
+
+    /**
+     * Page paths with a segment starting with the typed text, whole-path matches first.
+     */
+    List<String> suggestPaths(String typed, int limit) {
+        return pathPrefixes.lookup(typed, limit);
+    }
+
+    /**
+     * Turns lowercase query words into this index's terms.
+     */
+    List<String> analyze(List<String> words) {
+        return analyzer.expand(words, false);
+    }
+
+    int size() {
+        return titles.length;
+    }
+
+    String title(int doc) {
+        return titles[doc];
+    }
+
+    String url(int doc) {
+        return urls[doc];
+    }
+
+    /**
+     * Scores entries matching at least one term with BM25F and keeps the best k.
+     * Entries sharing a key count once, with their best score.
+     * @param terms Lowercase query terms.
+     * @param keys Key per entry id, the link it resolves to, so entries with the same link take one slot.
+     * @param k Max hits to keep.
+     * @return Kept hits, best first; equal scores keep entry order.
+     */
+    TopHits top(List<String> terms, String[] keys, int k) {
+        return top(terms, Collections.emptyList(), keys, k);
+    }
+
+    /**
+     * Same as {@link #top(List, String[], int)}, also scoring typo corrections at a lower weight.
+     * @param fuzzyTerms Corrections from {@link #expandFuzzy(List)}.
+     */
+    TopHits top(List<String> terms, List<String> fuzzyTerms, String[] keys, int k) {
+        int n = titles.length;
+        if (n >= PARALLEL_MIN_ENTRIES && SCORING_POOL.getParallelism() > 1
+                && postingCount(terms) + postingCount(fuzzyTerms) >= PARALLEL_MIN_POSTINGS) {
+            // Two chunks per worker leaves some slack for stealing when postings are skewed.
+            int chunk = Math.max(PARALLEL_MIN_CHUNK, n / (SCORING_POOL.getParallelism() * 2) + 1);
+            return SCORING_POOL.invoke(new ScoreTask(terms, fuzzyTerms, keys, 0, n, k, chunk));
+        }
+        return topInRange(terms, fuzzyTerms, keys, 0, n, k);
+    }
+
+    private int postingCount(List<String> terms) {
+        int total = 0;
+        for (String t : terms) {
+            int[] list = postings.get(t);
+            if (list != null) total += list.length / 2;
+        }
+        return total;
+    }
+
+    /**
+     * Splits the entry range in halves until it's below the chunk size, then merges the
+     * halves' top-k. Each hit kept globally is also kept in its own chunk, so this
+     * matches the sequential result exactly.
+     */
+    private class ScoreTask extends RecursiveTask<TopHits> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> terms;
+        private final List<String> fuzzyTerms;
+        private final String[] keys;
+        private final int from;
+        private final int to;
+        private final int k;
+        private final int chunk;
+
+        ScoreTask(List<String> terms, List<String> fuzzyTerms, String[] keys, int from, int to, int k, int chunk) {
+            this.terms = terms;
+            this.fuzzyTerms = fuzzyTerms;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected TopHits compute() {
+            if (to - from <= chunk) return topInRange(terms, fuzzyTerms, keys, from, to, k);
+            int mid = (from + to) >>> 1;
+            ScoreTask left = new ScoreTask(terms, fuzzyTerms, keys, from, mid, k, chunk);
+            left.fork();
+            TopHits right = new ScoreTask(terms, fuzzyTerms, keys, mid, to, k, chunk).compute();
+            return TopHits.merge(left.join(), right, k);
+        }
+    }
+
+    /**
+     * Scores entries with ids in [from, to) only.
+     */
+    private TopHits topInRange(List<String> terms, List<String> fuzzyTerms, String[] keys, int from, int to, int k) {
+        Scratch scratch = SCRATCH.get();
+        float[] scores = scratch.scores(titles.length);
+        IntList touched = scratch.touched;
+        try {
+            for (String t : terms) accumulate(t, 1f, scores, touched, from, to);
+            for (String t : fuzzyTerms) accumulate(t, FUZZY_BOOST, scores, touched, from, to);
+            TopHits hits = new TopHits(k);
+            for (int i = 0; i < touched.size(); i++) {
+                int doc = touched.get(i);
+                hits.offer(doc, scores[doc], keys[doc]);
+            }
+            hits.finish();
+            return hits;
+        } finally {
+            // Only touched slots were written, so only those need resetting.
+            for (int i = 0; i < touched.size(); i++) scores[touched.get(i)] = 0;
+            touched.clear();
+        }
+    }
+
+    /**
+     * Adds one term's BM25F contribution to every entry in its posting list.
+     */
+    private void accumulate(String term, float boost, float[] scores, IntList touched, int from, int to) {
+        int[] list = postings.get(term);
+        if (list == null) return;
+        float idf = idf(list.length / 2);
+        for (int i = firstPosting(list, from); i < list.length; i += 2) {
+            int doc = list[i];
+            if (doc >= to) break;
+            int payload = list[i + 1];
+            int titleTf = (payload >>> TITLE_TF_SHIFT) & TITLE_TF_MAX;
+            int contentTf = (payload >>> CONTENT_TF_SHIFT) & CONTENT_TF_MAX;
+            float tf = TITLE_FIELD_WEIGHT * titleTf * titleNorms[doc] + CONTENT_FIELD_WEIGHT * contentTf * contentNorms[doc];
+            float score = idf * tf / (K1 + tf);
+            if ((payload & PREFIX_BIT) != 0) score += PREFIX_BOOST * idf;
+            if (scores[doc] == 0) touched.add(doc);
+            scores[doc] += boost * score;
+        }
+    }
+
+    /**
+     * Binary search for the offset of the first posting with doc id >= from.
+     */
+    private static int firstPosting(int[] list, int from) {
+        if (from == 0) return 0;
+        int lo = 0;
+        int hi = list.length / 2;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (list[mid * 2] < from) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo * 2;
+    }
+
+    private float idf(int docFreq) {
+        int n = titles.length;
+        return (float) Math.log(1 + (n - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    /**
+     * Finds indexed terms within a small edit distance of query terms the index doesn't contain,
+     * e.g. "magnatite" -> "magnetite". Candidates come from shared trigrams and only the
+     * best {@value #MAX_FUZZY_CANDIDATES} per term get an edit-distance check.
+     * @param terms Lowercase query terms.
+     * @return Corrections, possibly empty.
+     */
+    List<String> expandFuzzy(List<String> terms) {
+        List<String> out = new ArrayList<>();
+        int expanded = 0;
+        for (String term : terms) {
+            if (expanded >= MAX_FUZZY_TERMS) break;
+            if (term.length() < FUZZY_MIN_TERM_LENGTH || postings.containsKey(term)) continue;
+            expanded++;
+            for (String c : corrections(term)) {
+                if (!out.contains(c)) out.add(c);
+            }
+        }
+        return out;
+    }
+
+    private List<String> corrections(String term) {
+        int maxDist = term.length() <= 5 ? 1 : 2;
+        Set<String> grams = trigrams(term);
+        // Each edit breaks at most three trigrams.
+        int minShared = Math.max(1, grams.size() - 3 * maxDist);
+
+        Scratch scratch = SCRATCH.get();
+        int[] shared = scratch.counts(vocab.length);
+        IntList seen = scratch.seen;
+        List<int[]> candidates = new ArrayList<>();
+        try {
+            for (String g : grams) {
+                int[] ids = vocabTrigrams.get(g);
+                if (ids == null) continue;
+                for (int id : ids) {
+                    if (shared[id] == 0) seen.add(id);
+                    shared[id]++;
+                }
+            }
+            for (int i = 0; i < seen.size(); i++) {
+                int id = seen.get(i);
+                if (shared[id] >= minShared && Math.abs(vocab[id].length() - term.length()) <= maxDist) {
+                    candidates.add(new int[]{id, shared[id]});
+                }
+            }
+        } finally {
+            for (int i = 0; i < seen.size(); i++) shared[seen.get(i)] = 0;
+            seen.clear();
+        }
+
+        candidates.sort((a, b) -> Integer.compare(b[1], a[1]));
+        List<int[]> matches = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && i < MAX_FUZZY_CANDIDATES; i++) {
+            int id = candidates.get(i)[0];
+            int dist = boundedEditDistance(term, vocab[id], maxDist);
+            if (dist <= maxDist) matches.add(new int[]{id, dist});
+        }
+        // Closest first, then the term found in more entries.
+        matches.sort((a, b) -> a[1] != b[1]
+                ? Integer.compare(a[1], b[1])
+                : Integer.compare(postings.get(vocab[b[0]]).length, postings.get(vocab[a[0]]).length));
+
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < matches.size() && i < MAX_FUZZY_EXPANSIONS; i++) out.add(vocab[matches.get(i)[0]]);
+        return out;
+    }
+
+    private static Map<String, int[]> buildTrigrams(String[] vocab) {
+        Map<String, IntList> building = new HashMap<>();
+        for (int id = 0; id < vocab.length; id++) {
+            for (String g : trigrams(vocab[id])) building.computeIfAbsent(g, k -> new IntList()).add(id);
+        }
+        Map<String, int[]> out = new HashMap<>(building.size() * 2);
+        for (Map.Entry<String, IntList> b : building.entrySet()) out.put(b.getKey(), b.getValue().toArray());
+        return out;
+    }
+
+    /**
+     * Distinct trigrams of a term padded with boundary markers, so short terms still produce some.
+     */
+    private static Set<String> trigrams(String term) {
+        String padded = "^" + term + "$";
+        Set<String> out = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) out.add(padded.substring(i, i + 3));
+        return out;
+    }
+
+    /**
+     * Levenshtein distance, giving up early once it must exceed max.
+     * @return The distance, or max + 1 if larger than max.
+     */
+    static int boundedEditDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) return max + 1;
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) return max + 1;
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return Math.min(prev[b.length()], max + 1);
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    // Per-thread score and trigram-count accumulators, reused across queries.
+    private static class Scratch {
+        private float[] scores = new float[0];
+        private final IntList touched = new IntList();
+        private int[] counts = new int[0];
+        private final IntList seen = new IntList();
+
+        float[] scores(int size) {
+            if (scores.length < size) scores = new float[size];
+            return scores;
+        }
+
+        int[] counts(int size) {
+            if (counts.length < size) counts = new int[size];
+            return counts;
+        }
+    }
+
+    /**
+     * Bounded min-heap of the best hits seen so far, deduplicated by key.
+     * Costs O(n log k) and only allocates for hits that make it into the heap.
+     */
+    static class TopHits {
+        private final int k;
+        // Worst hit at the head: lowest score, then highest doc id.
+        private final PriorityQueue<Hit> heap;
+        private final Map<String, Hit> byKey = new HashMap<>();
+        private Hit[] ranked;
+
+        TopHits(int k) {
+            this.k = Math.max(1, k);
+            this.heap = new PriorityQueue<>(Math.min(this.k, 256), TopHits::compareWorstFirst);
+        }
+
+        private static int compareWorstFirst(Hit a, Hit b) {
+            if (a.score != b.score) return Float.compare(a.score, b.score);
+            return Integer.compare(b.doc, a.doc);
+        }
+
+        void offer(int doc, float score, String key) {
+            if (heap.size() >= k) {
+                Hit worst = heap.peek();
+                if (score < worst.score || (score == worst.score && doc > worst.doc)) return;
+            }
+            Hit existing = byKey.get(key);
+            if (existing != null) {
+                if (score < existing.score || (score == existing.score && doc > existing.doc)) return;
+                heap.remove(existing);
+            } else if (heap.size() >= k) {
+                Hit evicted = heap.poll();
+                byKey.remove(evicted.key, evicted);
+            }
+            Hit hit = new Hit(doc, score, key);
+            heap.add(hit);
+            byKey.put(key, hit);
+        }
+
+        void finish() {
+            ranked = heap.toArray(new Hit[0]);
+            Arrays.sort(ranked, (a, b) -> compareWorstFirst(b, a));
+        }
+
+        /**
+         * Best k of two finished results, deduplicated across both.
+         */
+        static TopHits merge(TopHits a, TopHits b, int k) {
+            TopHits merged = new TopHits(k);
+            for (Hit h : a.ranked) merged.offer(h.doc, h.score, h.key);
+            for (Hit h : b.ranked) merged.offer(h.doc, h.score, h.key);
+            merged.finish();
+            return merged;
+        }
+
+        int size() {
+            return ranked.length;
+        }
+
+        int doc(int rank) {
+            return ranked[rank].doc;
+        }
+
+        float score(int rank) {
+            return ranked[rank].score;
+        }
+
+        private record Hit(int doc, float score, String key) {}
+    }
+
+    /**
+     * Sorted tables of every word start of a set of strings, so a prefix lookup is a binary search
+     * plus a short scan. Works like a flattened trie without a node per character.
+     */
+    static class PrefixIndex {
+        // Don't scan more than this many matching word starts per lookup.
+        private static final int MAX_SCAN = 512;
+
+        private final String[] values;
+        private final String[] keys;
+        // (value id << 32) | word start offset, sorted by the key suffix at that offset.
+        // Starts of the whole string are kept apart so they can be ranked first.
+        private final long[] heads;
+        private final long[] inner;
+
+        private PrefixIndex(String[] values, String[] keys, long[] heads, long[] inner) {
+            this.values = values;
+            this.keys = keys;
+            this.heads = heads;
+            this.inner = inner;
+        }
+
+        static PrefixIndex of(Collection<String> raw) {
+            LinkedHashSet<String> distinct = new LinkedHashSet<>();
+            for (String v : raw) {
+                if (v != null && !v.isBlank()) distinct.add(v);
+            }
+            String[] values = distinct.toArray(new String[0]);
+            String[] keys = new String[values.length];
+            List<Long> heads = new ArrayList<>();
+            List<Long> inner = new ArrayList<>();
+            for (int id = 0; id < values.length; id++) {
+                String key = values[id].toLowerCase(Locale.ROOT);
+                keys[id] = key;
+                heads.add((long) id << 32);
+                boolean prevWord = true;
+                for (int i = 0; i < key.length(); ) {
+                    int cp = key.codePointAt(i);
+                    boolean word = isWordChar(cp);
+                    // Every CJK character starts a word, there are no spaces to go by.
+                    if (word && (!prevWord || isCjk(cp))) inner.add(((long) id << 32) | i);
+                    prevWord = word;
+                    i += Character.charCount(cp);
+                }
+            }
+            return new PrefixIndex(values, keys, sorted(keys, heads), sorted(keys, inner));
+        }
+
+        private static long[] sorted(String[] keys, List<Long> starts) {
+            Long[] boxed = starts.toArray(new Long[0]);
+            Arrays.sort(boxed, (a, b) -> compareSuffix(keys, a, b));
+            long[] out = new long[boxed.length];
+            for (int i = 0; i < boxed.length; i++) out[i] = boxed[i];
+            return out;
+        }
+
+        private static int compareSuffix(String[] keys, long a, long b) {
+            String ka = keys[(int) (a >>> 32)];
+            String kb = keys[(int) (b >>> 32)];
+            int ia = (int) a;
+            int ib = (int) b;
+            int n = Math.min(ka.length() - ia, kb.length() - ib);
+            for (int i = 0; i < n; i++) {
+                char ca = ka.charAt(ia + i);
+                char cb = kb.charAt(ib + i);
+                if (ca != cb) return ca - cb;
+            }
+            return (ka.length() - ia) - (kb.length() - ib);
+        }
+
+        List<String> lookup(String typed, int limit) {
+            String prefix = typed != null ? typed.trim().toLowerCase(Locale.ROOT) : "";
+            LinkedHashSet<Integer> ids = new LinkedHashSet<>();
+            collect(heads, prefix, limit, ids);
+            collect(inner, prefix, limit, ids);
+            List<String> out = new ArrayList<>(ids.size());
+            for (int id : ids) out.add(values[id]);
+            return out;
+        }
+
+        private void collect(long[] starts, String prefix, int limit, Set<Integer> ids) {
+            // First word start whose suffix is >= prefix.
+            int lo = 0;
+            int hi = starts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                long s = starts[mid];
+                if (compareTo(keys[(int) (s >>> 32)], (int) s, prefix) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            for (int i = lo; i < starts.length && i < lo + MAX_SCAN && ids.size() < limit; i++) {
+                long s = starts[i];
+                int id = (int) (s >>> 32);
+                if (!keys[id].startsWith(prefix, (int) s)) break;
+                ids.add(id);
+            }
+        }
+
+        private static int compareTo(String key, int off, String prefix) {
+            int n = Math.min(key.length() - off, prefix.length());
+            for (int i = 0; i < n; i++) {
+                char c = key.charAt(off + i);
+                char p = prefix.charAt(i);
+                if (c != p) return c - p;
+            }
+            return (key.length() - off) - prefix.length();
+        }
+    }
+
+    // Growable int array, avoids boxing while building posting lists.
+    static class IntList {
+        private int[] data = new int[8];
+        private int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int i) {
+            return data[i];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
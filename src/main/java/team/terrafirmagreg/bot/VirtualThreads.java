@@ -0,0 +1,27 @@
+package team.terrafirmagreg.bot;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Looks up the virtual-thread executors of the Java 21 build, used for JDA's event pool and Scraper's page parsing.
+ */
+final class VirtualThreads {
+    private VirtualThreads() {}
+
+    /**
+     * A virtual-thread executor from the Java 21 build, or null when running the plain Java 17 one.
+     * Setting -Dfg.platformThreads=true also gives null, for the benchmark's platform-thread run.
+     * @param name Prefix of the thread names.
+     */
+    static ExecutorService newExecutor(String name) {
+        if (Boolean.getBoolean("fg.platformThreads")) return null;
+        try {
+            Class<?> type = Class.forName("team.terrafirmagreg.bot.VirtualThreadInteractions");
+            Method factory = type.getDeclaredMethod("newExecutor", String.class);
+            return (ExecutorService) factory.invoke(null, name);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}